@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.caconfig.spi.ConfigurationPersistenceException;
+import org.apache.sling.testing.mock.sling.context.SlingContextImpl;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Recorded state of configuration resource subtrees, which can be restored after each test when a single context
+ * is shared by all tests of a class.
+ * The subtrees are kept as in-memory snapshots, so restoring them replaces the subtrees with a single commit
+ * without going through the configuration persistence strategies again.
+ * Get an instance via {@link MockContextAwareConfig#recordBaseline(SlingContextImpl, String...)}.
+ */
+@ProviderType
+public final class ConfigurationBaseline {
+
+    private final SlingContextImpl context;
+    private final ResourceResolver resourceResolver;
+    private final Map<String, byte[]> snapshots;
+
+    ConfigurationBaseline(@NotNull SlingContextImpl context, @NotNull String @NotNull ... paths) {
+        this.context = context;
+        this.resourceResolver = context.resourceResolver();
+        this.snapshots = new LinkedHashMap<>();
+        for (String path : paths) {
+            Resource resource = resourceResolver.getResource(path);
+            // null marks a path that did not exist when the baseline was recorded
+            snapshots.put(path, resource != null ? ConfigurationSnapshot.export(resourceResolver, path) : null);
+        }
+    }
+
+    /**
+     * Discards uncommitted changes and restores all recorded subtrees to the state when the baseline was recorded.
+     * Subtrees that did not exist at that time are removed.
+     */
+    public void restore() {
+        try {
+            resourceResolver.revert();
+            for (Map.Entry<String, byte[]> entry : snapshots.entrySet()) {
+                if (entry.getValue() != null) {
+                    ConfigurationSnapshot.restore(resourceResolver, entry.getValue());
+                } else {
+                    Resource resource = resourceResolver.getResource(entry.getKey());
+                    if (resource != null) {
+                        resourceResolver.delete(resource);
+                        resourceResolver.commit();
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new ConfigurationPersistenceException("Unable to restore configuration baseline.", ex);
+        } finally {
+            ConfigurationBuilderCache.invalidateIfPresent(context);
+            ContextPathIndex.refreshIfPresent(context);
+        }
+    }
+}
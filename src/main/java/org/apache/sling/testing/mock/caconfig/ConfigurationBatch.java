@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.caconfig.spi.ConfigurationPersistenceException;
+import org.apache.sling.testing.mock.sling.context.SlingContextImpl;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Stages multiple configuration writes and commits them at once.
+ * The configuration values are written through the configured persistence strategies as with
+ * {@link ConfigurationWriter}, but the commits of the persistence strategies are suppressed until {@link #commit()}
+ * is called.
+ * Get an instance via {@link MockContextAwareConfig#batch(SlingContextImpl)}.
+ */
+@ProviderType
+public final class ConfigurationBatch {
+
+    private final DeferredCommitResourceResolver resourceResolver;
+    private final ConfigurationWriter writer;
+
+    ConfigurationBatch(@NotNull SlingContextImpl context) {
+        this.resourceResolver = new DeferredCommitResourceResolver(context.resourceResolver());
+        this.writer = new ConfigurationWriter(context, resourceResolver);
+    }
+
+    /**
+     * Stages configurations for multiple context paths. All context resources are resolved first, so nothing is
+     * written if any of them does not exist.
+     * @param configurations Map with context path as key, and a map of configurations as value.
+     *     See {@link ConfigurationWriter#writeConfigurations(Map)}.
+     * @return this
+     */
+    public @NotNull ConfigurationBatch writeConfigurations(
+            @NotNull Map<String, ? extends Map<String, ?>> configurations) {
+        writer.writeConfigurations(configurations);
+        return this;
+    }
+
+    /**
+     * Stages configuration parameters using the primary configured persistence provider.
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationBatch writeConfiguration(
+            @NotNull String contextPath, @NotNull Class<?> configClass, @NotNull Map<String, Object> values) {
+        writer.writeConfiguration(contextPath, configClass, values);
+        return this;
+    }
+
+    /**
+     * Stages configuration parameters using the primary configured persistence provider.
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationBatch writeConfiguration(
+            @NotNull String contextPath, @NotNull String configName, @NotNull Map<String, Object> values) {
+        writer.writeConfiguration(contextPath, configName, values);
+        return this;
+    }
+
+    /**
+     * Stages configuration parameters using the primary configured persistence provider.
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationBatch writeConfiguration(
+            @NotNull String contextPath, @NotNull Class<?> configClass, @NotNull Object @NotNull ... values) {
+        writer.writeConfiguration(contextPath, configClass, values);
+        return this;
+    }
+
+    /**
+     * Stages configuration parameters using the primary configured persistence provider.
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationBatch writeConfiguration(
+            @NotNull String contextPath, @NotNull String configName, @NotNull Object @NotNull ... values) {
+        writer.writeConfiguration(contextPath, configName, values);
+        return this;
+    }
+
+    /**
+     * Stages a collection of configuration parameters using the primary configured persistence provider.
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationBatch writeConfigurationCollection(
+            @NotNull String contextPath,
+            @NotNull Class<?> configClass,
+            @NotNull Collection<@NotNull Map<String, Object>> values) {
+        writer.writeConfigurationCollection(contextPath, configClass, values);
+        return this;
+    }
+
+    /**
+     * Stages a collection of configuration parameters using the primary configured persistence provider.
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationBatch writeConfigurationCollection(
+            @NotNull String contextPath,
+            @NotNull String configName,
+            @NotNull Collection<@NotNull Map<String, Object>> values) {
+        writer.writeConfigurationCollection(contextPath, configName, values);
+        return this;
+    }
+
+    /**
+     * Stages a large collection of configuration parameters using the primary configured persistence provider,
+     * without copying the items. See {@link ConfigurationWriter#writeConfigurationCollection(String, String,
+     * Stream)}.
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param values Configuration values, the stream is consumed once and closed
+     * @return this
+     */
+    public @NotNull ConfigurationBatch writeConfigurationCollection(
+            @NotNull String contextPath, @NotNull Class<?> configClass, @NotNull Stream<Map<String, Object>> values) {
+        writer.writeConfigurationCollection(contextPath, configClass, values);
+        return this;
+    }
+
+    /**
+     * Stages a large collection of configuration parameters using the primary configured persistence provider,
+     * without copying the items. See {@link ConfigurationWriter#writeConfigurationCollection(String, String,
+     * Stream)}.
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param values Configuration values, the stream is consumed once and closed
+     * @return this
+     */
+    public @NotNull ConfigurationBatch writeConfigurationCollection(
+            @NotNull String contextPath, @NotNull String configName, @NotNull Stream<Map<String, Object>> values) {
+        writer.writeConfigurationCollection(contextPath, configName, values);
+        return this;
+    }
+
+    /**
+     * Stages items to append to a configuration collection using the primary configured persistence provider.
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param values Configuration values of the new items
+     * @return this
+     */
+    public @NotNull ConfigurationBatch appendConfigurationCollectionItems(
+            @NotNull String contextPath,
+            @NotNull Class<?> configClass,
+            @NotNull Collection<@NotNull Map<String, Object>> values) {
+        writer.appendConfigurationCollectionItems(contextPath, configClass, values);
+        return this;
+    }
+
+    /**
+     * Stages items to append to a configuration collection using the primary configured persistence provider.
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param values Configuration values of the new items
+     * @return this
+     */
+    public @NotNull ConfigurationBatch appendConfigurationCollectionItems(
+            @NotNull String contextPath,
+            @NotNull String configName,
+            @NotNull Collection<@NotNull Map<String, Object>> values) {
+        writer.appendConfigurationCollectionItems(contextPath, configName, values);
+        return this;
+    }
+
+    /**
+     * Stages new values of a single configuration collection item using the primary configured persistence
+     * provider.
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param itemName Collection item name
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationBatch updateConfigurationCollectionItem(
+            @NotNull String contextPath,
+            @NotNull Class<?> configClass,
+            @NotNull String itemName,
+            @NotNull Map<String, Object> values) {
+        writer.updateConfigurationCollectionItem(contextPath, configClass, itemName, values);
+        return this;
+    }
+
+    /**
+     * Stages new values of a single configuration collection item using the primary configured persistence
+     * provider.
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param itemName Collection item name
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationBatch updateConfigurationCollectionItem(
+            @NotNull String contextPath,
+            @NotNull String configName,
+            @NotNull String itemName,
+            @NotNull Map<String, Object> values) {
+        writer.updateConfigurationCollectionItem(contextPath, configName, itemName, values);
+        return this;
+    }
+
+    /**
+     * Stages new values of a single configuration collection item using the primary configured persistence
+     * provider.
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param index Position of the item in the collection
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationBatch updateConfigurationCollectionItem(
+            @NotNull String contextPath,
+            @NotNull Class<?> configClass,
+            int index,
+            @NotNull Map<String, Object> values) {
+        writer.updateConfigurationCollectionItem(contextPath, configClass, index, values);
+        return this;
+    }
+
+    /**
+     * Stages new values of a single configuration collection item using the primary configured persistence
+     * provider.
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param index Position of the item in the collection
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationBatch updateConfigurationCollectionItem(
+            @NotNull String contextPath, @NotNull String configName, int index, @NotNull Map<String, Object> values) {
+        writer.updateConfigurationCollectionItem(contextPath, configName, index, values);
+        return this;
+    }
+
+    /**
+     * Stages the removal of items from a configuration collection using the primary configured persistence
+     * provider.
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param itemNames Collection item names
+     * @return this
+     */
+    public @NotNull ConfigurationBatch removeConfigurationCollectionItems(
+            @NotNull String contextPath, @NotNull Class<?> configClass, @NotNull String @NotNull ... itemNames) {
+        writer.removeConfigurationCollectionItems(contextPath, configClass, itemNames);
+        return this;
+    }
+
+    /**
+     * Stages the removal of items from a configuration collection using the primary configured persistence
+     * provider.
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param itemNames Collection item names
+     * @return this
+     */
+    public @NotNull ConfigurationBatch removeConfigurationCollectionItems(
+            @NotNull String contextPath, @NotNull String configName, @NotNull String @NotNull ... itemNames) {
+        writer.removeConfigurationCollectionItems(contextPath, configName, itemNames);
+        return this;
+    }
+
+    /**
+     * Commits all staged configuration writes with a single commit.
+     */
+    public void commit() {
+        try {
+            resourceResolver.commitDeferred();
+        } catch (PersistenceException ex) {
+            throw new ConfigurationPersistenceException("Unable to commit configuration changes.", ex);
+        }
+    }
+
+    /**
+     * @return Number of commits of the persistence strategies that were suppressed since the last commit.
+     */
+    int getDeferredCommitCount() {
+        return resourceResolver.getDeferredCommitCount();
+    }
+}
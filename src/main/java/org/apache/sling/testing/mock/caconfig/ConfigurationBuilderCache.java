@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.apache.sling.api.adapter.AdapterFactory;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.caconfig.ConfigurationBuilder;
+import org.apache.sling.caconfig.ConfigurationResolver;
+import org.apache.sling.caconfig.management.ConfigurationManager;
+import org.apache.sling.testing.mock.sling.context.SlingContextImpl;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.framework.Constants;
+
+/**
+ * Read-through cache for the configurations returned by {@link ConfigurationBuilder}, registered by
+ * {@link ContextPlugins#CACONFIG_CACHE}.
+ * Configurations are cached per resource path, config name, configuration type and result kind.
+ * When configurations are written or deleted via {@link ConfigurationManager} or {@link MockContextAwareConfig},
+ * the cached configurations of the context resource and all resources below it are discarded. Other context paths
+ * sharing or inheriting the changed configuration resources are not detected, and neither are changes made directly
+ * in the resource tree: call {@link #invalidate(String)} or {@link #invalidate()} after those.
+ * <p>
+ * Results of {@link ConfigurationBuilder#asAdaptable(Class)} and
+ * {@link ConfigurationBuilder#asAdaptableCollection(Class)} are not cached, as the adapted objects may be mutable.
+ * Cached collections and value maps are unmodifiable.
+ * </p>
+ * Get the instance of a context via {@link MockContextAwareConfig#getConfigurationBuilderCache(SlingContextImpl)}.
+ */
+@ProviderType
+public final class ConfigurationBuilderCache {
+
+    // the adapter manager asks adapter factories with lower ranking first
+    private static final int ADAPTER_FACTORY_RANKING = Integer.MIN_VALUE;
+    private static final int DECORATOR_RANKING = Integer.MAX_VALUE;
+
+    private final SlingContextImpl context;
+    private final Map<List<String>, Object> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private ConfigurationBuilderCache(SlingContextImpl context) {
+        this.context = context;
+    }
+
+    /**
+     * Register the cache, the caching adapter factory and the invalidating configuration manager in the given
+     * context.
+     * @param context Sling context
+     */
+    static void register(@NotNull SlingContextImpl context) {
+        ConfigurationBuilderCache cache = new ConfigurationBuilderCache(context);
+        context.registerService(ConfigurationBuilderCache.class, cache);
+        context.registerService(
+                AdapterFactory.class,
+                cache.new CachingAdapterFactory(),
+                AdapterFactory.ADAPTABLE_CLASSES,
+                Resource.class.getName(),
+                AdapterFactory.ADAPTER_CLASSES,
+                ConfigurationBuilder.class.getName(),
+                Constants.SERVICE_RANKING,
+                ADAPTER_FACTORY_RANKING);
+        context.registerService(
+                ConfigurationManager.class,
+                (ConfigurationManager) Proxy.newProxyInstance(
+                        ConfigurationManager.class.getClassLoader(),
+                        new Class<?>[] {ConfigurationManager.class},
+                        cache.new InvalidatingHandler()),
+                Constants.SERVICE_RANKING,
+                DECORATOR_RANKING);
+    }
+
+    /**
+     * Clears the cache if it is registered in the given context.
+     * @param context Sling context
+     */
+    static void invalidateIfPresent(@NotNull SlingContextImpl context) {
+        ConfigurationBuilderCache cache = context.getService(ConfigurationBuilderCache.class);
+        if (cache != null) {
+            cache.invalidate();
+        }
+    }
+
+    /**
+     * Discard all cached configurations. Hit and miss counters are kept.
+     */
+    public void invalidate() {
+        entries.clear();
+    }
+
+    /**
+     * Discard the cached configurations of the given resource path and all resources below it.
+     * Hit and miss counters are kept.
+     * @param path Resource path, e.g. a context path
+     */
+    public void invalidate(@NotNull String path) {
+        String pathPrefix = "/".equals(path) ? path : path + "/";
+        entries.keySet().removeIf(key -> {
+            String resourcePath = key.get(0);
+            return resourcePath.equals(path) || resourcePath.startsWith(pathPrefix);
+        });
+    }
+
+    /**
+     * @return Number of configuration lookups answered from the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Number of configuration lookups resolved via the configuration resolver
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Number of cached configurations
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private Object get(List<String> key, Supplier<Object> loader) {
+        Object value = entries.get(key);
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        value = loader.get();
+        if (value != null) {
+            entries.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * @param service Service instance
+     * @return true if the service is the caching adapter factory or the invalidating configuration manager
+     */
+    static boolean isDecorator(@NotNull Object service) {
+        return service instanceof CachingAdapterFactory
+                || (Proxy.isProxyClass(service.getClass())
+                        && Proxy.getInvocationHandler(service) instanceof InvalidatingHandler);
+    }
+
+    /**
+     * Returns caching builders for resources. The configuration resolver is looked up on each adaption, so it
+     * is activated only on first use if the lazy plugin is used.
+     */
+    private final class CachingAdapterFactory implements AdapterFactory {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <AdapterType> @Nullable AdapterType getAdapter(
+                @NotNull Object adaptable, @NotNull Class<AdapterType> type) {
+            if (!(adaptable instanceof Resource) || type != ConfigurationBuilder.class) {
+                return null;
+            }
+            return (AdapterType) new CachingConfigurationBuilder((Resource) adaptable, "");
+        }
+    }
+
+    /**
+     * Builder answering lookups from the cache, the real builder is created only on a cache miss.
+     * Like the real builder, it is immutable.
+     */
+    private final class CachingConfigurationBuilder implements ConfigurationBuilder {
+
+        private final Resource resource;
+        private final String configName;
+        private ConfigurationBuilder delegate;
+
+        CachingConfigurationBuilder(Resource resource, String configName) {
+            this.resource = resource;
+            this.configName = configName;
+        }
+
+        @Override
+        public @NotNull ConfigurationBuilder name(@NotNull String name) {
+            return new CachingConfigurationBuilder(resource, name);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> @Nullable T as(@NotNull Class<T> clazz) {
+            return (T) get(key("as", clazz.getName()), () -> getDelegate().as(clazz));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> @NotNull Collection<T> asCollection(@NotNull Class<T> clazz) {
+            return (Collection<T>) get(
+                    key("asCollection", clazz.getName()),
+                    () -> Collections.unmodifiableCollection(getDelegate().asCollection(clazz)));
+        }
+
+        @Override
+        public @NotNull ValueMap asValueMap() {
+            return (ValueMap) get(
+                    key("asValueMap", ""),
+                    () -> new ValueMapDecorator(Collections.unmodifiableMap(
+                            new HashMap<>(getDelegate().asValueMap()))));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public @NotNull Collection<ValueMap> asValueMapCollection() {
+            return (Collection<ValueMap>) get(
+                    key("asValueMapCollection", ""),
+                    () -> Collections.unmodifiableCollection(getDelegate().asValueMapCollection()));
+        }
+
+        @Override
+        public <T> @Nullable T asAdaptable(@NotNull Class<T> clazz) {
+            return getDelegate().asAdaptable(clazz);
+        }
+
+        @Override
+        public <T> @NotNull Collection<T> asAdaptableCollection(@NotNull Class<T> clazz) {
+            return getDelegate().asAdaptableCollection(clazz);
+        }
+
+        private List<String> key(String kind, String typeName) {
+            return List.of(resource.getPath(), configName, kind, typeName);
+        }
+
+        private ConfigurationBuilder getDelegate() {
+            if (delegate == null) {
+                ConfigurationBuilder builder =
+                        context.getService(ConfigurationResolver.class).get(resource);
+                delegate = configName.isEmpty() ? builder : builder.name(configName);
+            }
+            return delegate;
+        }
+    }
+
+    /**
+     * Delegates all calls to the real configuration manager, and discards the cached configurations below the context
+     * resource after each write.
+     */
+    private final class InvalidatingHandler implements InvocationHandler {
+
+        private volatile ConfigurationManager delegate;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return "CacheInvalidating[" + ConfigurationManager.class.getName() + "]";
+                }
+            }
+            try {
+                return method.invoke(getDelegate(), args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            } finally {
+                if (method.getName().startsWith("persist") || method.getName().startsWith("delete")) {
+                    if (args != null && args.length > 0 && args[0] instanceof Resource) {
+                        invalidate(((Resource) args[0]).getPath());
+                    } else {
+                        invalidate();
+                    }
+                }
+            }
+        }
+
+        private ConfigurationManager getDelegate() {
+            if (delegate == null) {
+                LazyServiceActivator.activateIfPresent(context);
+                for (ConfigurationManager service : context.getServices(ConfigurationManager.class, null)) {
+                    if (!isDecorator(service) && !LazyServiceActivator.isPlaceholder(service)) {
+                        delegate = service;
+                        break;
+                    }
+                }
+                if (delegate == null) {
+                    throw new IllegalStateException(
+                            "No " + ConfigurationManager.class.getName() + " service registered.");
+                }
+            }
+            return delegate;
+        }
+    }
+}
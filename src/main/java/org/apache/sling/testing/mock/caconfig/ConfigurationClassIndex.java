@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.testing.mock.caconfig.processor.ConfigurationClassIndexProcessor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads the configuration class index written by {@link ConfigurationClassIndexProcessor} from all classpath entries.
+ * Only the class names and the URLs of the classpath roots containing an index file are kept, so the index does
+ * not keep the class loader reachable. The index covers only these classpath roots, other roots still have to be
+ * scanned.
+ */
+final class ConfigurationClassIndex {
+
+    private final List<String> classNames;
+    private final Set<String> rootUrls;
+
+    private ConfigurationClassIndex(List<String> classNames, Set<String> rootUrls) {
+        this.classNames = classNames;
+        this.rootUrls = rootUrls;
+    }
+
+    /**
+     * Read all index files visible to the given class loader.
+     * @param classLoader Class loader
+     * @return Index, or null if no index file exists in the classpath
+     */
+    static @Nullable ConfigurationClassIndex read(@NotNull ClassLoader classLoader) {
+        Set<String> classNames = new TreeSet<>();
+        Set<String> rootUrls = new HashSet<>();
+        try {
+            Enumeration<URL> urls = classLoader.getResources(ConfigurationClassIndexProcessor.INDEX_RESOURCE);
+            while (urls.hasMoreElements()) {
+                URL url = urls.nextElement();
+                readIndexFile(url, classNames);
+                rootUrls.add(getRootUrl(url));
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Unable to read " + ConfigurationClassIndexProcessor.INDEX_RESOURCE, ex);
+        }
+        if (rootUrls.isEmpty()) {
+            return null;
+        }
+        return new ConfigurationClassIndex(
+                Collections.unmodifiableList(new ArrayList<>(classNames)), Collections.unmodifiableSet(rootUrls));
+    }
+
+    /**
+     * Classpath root of an index file, in the same form as the URLs returned by the classpath scanner
+     * (e.g. <code>file:/path/classes/</code> or <code>jar:file:/path/lib.jar!/</code>).
+     */
+    private static String getRootUrl(URL url) {
+        return StringUtils.removeEnd(url.toExternalForm(), ConfigurationClassIndexProcessor.INDEX_RESOURCE);
+    }
+
+    private static void readIndexFile(URL url, Set<String> classNames) throws IOException {
+        try (Reader reader = new InputStreamReader(url.openStream(), StandardCharsets.UTF_8);
+                BufferedReader bufferedReader = new BufferedReader(reader)) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    classNames.add(line.trim());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param rootUrl URL of a classpath root
+     * @return true if the classpath root contains an index file
+     */
+    boolean isIndexed(@NotNull URL rootUrl) {
+        return rootUrls.contains(rootUrl.toExternalForm());
+    }
+
+    /**
+     * Get names of all indexed configuration classes in the given package (and subpackages).
+     * The index may contain stale entries from previous compilations, which have to be ignored when loading
+     * the classes.
+     * @param packageName Package name
+     * @return Configuration class names
+     */
+    @NotNull
+    List<String> getConfigurationClassNames(@NotNull String packageName) {
+        String prefix = packageName + ".";
+        List<String> result = new ArrayList<>();
+        for (String className : classNames) {
+            if (className.startsWith(prefix)) {
+                result.add(className);
+            }
+        }
+        return result;
+    }
+}
@@ -18,43 +18,94 @@
  */
 package org.apache.sling.testing.mock.caconfig;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
 /**
  * Splits a list of key/value pairs which may contain nested configuration and nested configuration lists in it's parts.
+ * <p>
+ * The parts are sorted by key, so the write order does not depend on the map implementation used in the tests.
+ * Nested configurations and collections are only collected if the input contains any, as lists referencing the
+ * input entries.
+ * </p>
+ * <p>
+ * The values are copied even if the input contains no nested configurations: they are handed over to the
+ * persistence strategies, which may keep the map after the write, while the caller may modify and reuse the input
+ * map for further writes. The sorted copy is also the cheapest of the variants measured with
+ * <code>ConfigurationDataPartsBenchmark</code>.
+ * </p>
  */
 class ConfigurationDataParts {
 
-    private final Map<String, Object> values = new TreeMap<>();
-    private final Map<String, Map<String, Object>> maps = new TreeMap<>();
-    private final Map<String, Collection<Map<String, Object>>> collections = new TreeMap<>();
+    private final Map<String, Object> values;
+    private final List<Map.Entry<String, Map<String, Object>>> maps;
+    private final List<Map.Entry<String, Collection<Map<String, Object>>>> collections;
 
-    @SuppressWarnings("unchecked")
+    @SuppressWarnings({"unchecked", "rawtypes"})
     ConfigurationDataParts(Map<String, Object> input) {
+        Map<String, Object> valueMap = new TreeMap<>();
+        List<Map.Entry<String, Map<String, Object>>> nestedMaps = null;
+        List<Map.Entry<String, Collection<Map<String, Object>>>> nestedCollections = null;
         for (Map.Entry<String, Object> entry : input.entrySet()) {
-            String key = entry.getKey();
             Object value = entry.getValue();
             if (value instanceof Map) {
-                maps.put(key, (Map) value);
+                if (nestedMaps == null) {
+                    nestedMaps = new ArrayList<>();
+                }
+                nestedMaps.add((Map.Entry) entry);
             } else if (value instanceof Collection) {
-                collections.put(key, (Collection) value);
+                if (nestedCollections == null) {
+                    nestedCollections = new ArrayList<>();
+                }
+                nestedCollections.add((Map.Entry) entry);
             } else {
-                values.put(key, value);
+                valueMap.put(entry.getKey(), value);
             }
         }
+        this.values = Collections.unmodifiableMap(valueMap);
+        this.maps = toSortedList(nestedMaps);
+        this.collections = toSortedList(nestedCollections);
     }
 
+    private static <T> List<Map.Entry<String, T>> toSortedList(List<Map.Entry<String, T>> entries) {
+        if (entries == null) {
+            return Collections.emptyList();
+        }
+        if (entries.size() > 1) {
+            entries.sort(Map.Entry.comparingByKey());
+        }
+        return entries;
+    }
+
+    /**
+     * @return Configuration values without nested configurations
+     */
     Map<String, Object> getValues() {
         return values;
     }
 
-    Map<String, Map<String, Object>> getMaps() {
+    /**
+     * @return Nested configurations
+     */
+    List<Map.Entry<String, Map<String, Object>>> getMaps() {
         return maps;
     }
 
-    Map<String, Collection<Map<String, Object>>> getCollections() {
+    /**
+     * @return Nested configuration collections
+     */
+    List<Map.Entry<String, Collection<Map<String, Object>>>> getCollections() {
         return collections;
     }
+
+    /**
+     * @return true if nested configurations or nested configuration collections exist
+     */
+    boolean hasNested() {
+        return !maps.isEmpty() || !collections.isEmpty();
+    }
 }
@@ -0,0 +1,325 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import javax.json.Json;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Loads configurations from JSON with a streaming parser, and writes them while parsing.
+ * Only the properties of the configurations currently parsed are kept in memory: each configuration is written
+ * when its JSON object ends, and the items of configuration collections are written one by one.
+ * <p>
+ * JSON objects are mapped to configurations, arrays of objects to configuration collections and arrays of strings,
+ * numbers or booleans to array properties. An empty array is written as empty configuration collection.
+ * If the persistence strategy does not support writing single collection items, the items of the collection
+ * are read into maps first and written as a whole.
+ * </p>
+ * <p>
+ * The JSON-P API (<code>javax.json</code>) is imported optionally, it is only required when loading JSON.
+ * </p>
+ */
+final class ConfigurationJsonLoader {
+
+    private final ConfigurationPersistHelper helper;
+    private final ConfigurationNameMappingCache configNameMapping;
+
+    /**
+     * @param helper Persist helper for the context
+     */
+    ConfigurationJsonLoader(@NotNull ConfigurationPersistHelper helper) {
+        this.helper = helper;
+        this.configNameMapping = helper.getNameMapping();
+    }
+
+    /**
+     * Loads a configuration from a JSON object, or a configuration collection from a JSON array.
+     * @param configName Config name
+     * @param inputStream JSON input stream, is closed after loading
+     */
+    void loadConfiguration(@NotNull String configName, @NotNull InputStream inputStream) {
+        try (JsonParser parser = Json.createParser(inputStream)) {
+            Deque<Frame> frames = new ArrayDeque<>();
+            startValue(parser, frames, null, configName, configName, nextEvent(parser));
+            processFrames(parser, frames);
+        }
+    }
+
+    /**
+     * Loads multiple configurations from a JSON object, which has the config names as keys and configuration
+     * objects or configuration collection arrays as values.
+     * @param inputStream JSON input stream, is closed after loading
+     */
+    void loadConfigurations(@NotNull InputStream inputStream) {
+        try (JsonParser parser = Json.createParser(inputStream)) {
+            if (nextEvent(parser) != Event.START_OBJECT) {
+                throw invalid(parser, "Expected object with config names as keys");
+            }
+            Deque<Frame> frames = new ArrayDeque<>();
+            frames.push(new Frame(null, "", false));
+            processFrames(parser, frames);
+        }
+    }
+
+    /**
+     * Processes the parse events until the frame of the root value is completed. Nested JSON objects and
+     * arrays push a new frame, so the call stack depth does not depend on the nesting depth.
+     */
+    private void processFrames(JsonParser parser, Deque<Frame> frames) {
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            Event event = nextEvent(parser);
+            if (frame.collection) {
+                if (event == Event.END_ARRAY) {
+                    frames.pop();
+                } else if (event == Event.START_OBJECT) {
+                    frames.push(frame.nextItem(configNameMapping));
+                } else {
+                    throw invalid(parser, "Expected object as item of configuration collection " + frame.configName);
+                }
+            } else if (event == Event.END_OBJECT) {
+                frames.pop();
+                if (frame.configName != null) {
+                    helper.persistConfigurationValues(frame.configName, frame.values);
+                }
+            } else if (event == Event.KEY_NAME) {
+                String key = parser.getString();
+                startValue(parser, frames, frame, key, frame.configNamePrefix + key, nextEvent(parser));
+            } else {
+                throw invalid(parser, "Unexpected " + event);
+            }
+        }
+    }
+
+    private void startValue(
+            JsonParser parser,
+            Deque<Frame> frames,
+            @Nullable Frame parent,
+            String key,
+            String configName,
+            Event event) {
+        if (event == Event.START_OBJECT) {
+            frames.push(new Frame(configName, configNameMapping.getConfigName(configName) + "/", false));
+        } else if (event == Event.START_ARRAY) {
+            startArray(parser, frames, parent, key, configName);
+        } else if (parent == null || parent.configName == null) {
+            throw invalid(parser, "Expected configuration object or configuration collection array for " + key);
+        } else {
+            Object value = getScalarValue(parser, event);
+            if (value != null) {
+                parent.values.put(key, value);
+            }
+        }
+    }
+
+    private void startArray(
+            JsonParser parser, Deque<Frame> frames, @Nullable Frame parent, String key, String configName) {
+        Event event = nextEvent(parser);
+        if (event == Event.END_ARRAY) {
+            helper.writeConfigurationCollection(configName, List.of());
+        } else if (event == Event.START_OBJECT) {
+            if (configNameMapping.isCollectionItemAddressable(configName)) {
+                // remove existing items, and write new items one by one
+                helper.deleteConfiguration(configName);
+                Frame collection =
+                        new Frame(configName, configNameMapping.getCollectionParentConfigName(configName), true);
+                frames.push(collection);
+                frames.push(collection.nextItem(configNameMapping));
+            } else {
+                helper.writeConfigurationCollection(configName, readCollection(parser));
+            }
+        } else if (parent == null || parent.configName == null) {
+            throw invalid(parser, "Expected configuration object or configuration collection array for " + key);
+        } else {
+            List<Object> values = new ArrayList<>();
+            while (event != Event.END_ARRAY) {
+                Object value = getScalarValue(parser, event);
+                if (value != null) {
+                    values.add(value);
+                }
+                event = nextEvent(parser);
+            }
+            parent.values.put(key, toArray(values));
+        }
+    }
+
+    /**
+     * Reads the items of a configuration collection into maps, after the start event of the first item.
+     */
+    @SuppressWarnings("unchecked")
+    private static Collection<Map<String, Object>> readCollection(JsonParser parser) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        items.add(readObject(parser));
+        Event event = nextEvent(parser);
+        while (event != Event.END_ARRAY) {
+            Object item = readValue(parser, event);
+            if (!(item instanceof Map)) {
+                throw invalid(parser, "Expected object as item of configuration collection");
+            }
+            items.add((Map<String, Object>) item);
+            event = nextEvent(parser);
+        }
+        return items;
+    }
+
+    private static Map<String, Object> readObject(JsonParser parser) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        Event event = nextEvent(parser);
+        while (event != Event.END_OBJECT) {
+            String key = parser.getString();
+            Object value = readValue(parser, nextEvent(parser));
+            if (value != null) {
+                values.put(key, value);
+            }
+            event = nextEvent(parser);
+        }
+        return values;
+    }
+
+    private static @Nullable Object readValue(JsonParser parser, Event event) {
+        if (event == Event.START_OBJECT) {
+            return readObject(parser);
+        }
+        if (event != Event.START_ARRAY) {
+            return getScalarValue(parser, event);
+        }
+        List<Object> values = new ArrayList<>();
+        boolean nested = false;
+        Event itemEvent = nextEvent(parser);
+        while (itemEvent != Event.END_ARRAY) {
+            Object value = readValue(parser, itemEvent);
+            if (value != null) {
+                nested |= value instanceof Map;
+                values.add(value);
+            }
+            itemEvent = nextEvent(parser);
+        }
+        return nested || values.isEmpty() ? values : toArray(values);
+    }
+
+    private static @Nullable Object getScalarValue(JsonParser parser, Event event) {
+        switch (event) {
+            case VALUE_STRING:
+                return parser.getString();
+            case VALUE_NUMBER:
+                if (parser.isIntegralNumber()) {
+                    long value = parser.getLong();
+                    return value == (int) value ? Integer.valueOf((int) value) : Long.valueOf(value);
+                }
+                return parser.getBigDecimal().doubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                throw invalid(parser, "Expected string, number or boolean value, got " + event);
+        }
+    }
+
+    /**
+     * Converts a list of scalar values to an array property. Mixed number types are converted to the widest type,
+     * other mixed types to strings.
+     */
+    private static Object toArray(List<Object> values) {
+        Class<?> type = null;
+        for (Object value : values) {
+            Class<?> valueType = value.getClass();
+            if (type == null || type == valueType) {
+                type = valueType;
+            } else if (value instanceof Number && Number.class.isAssignableFrom(type)) {
+                type = (type == Double.class || valueType == Double.class) ? Double.class : Long.class;
+            } else {
+                type = String.class;
+            }
+        }
+        if (type == null) {
+            return new String[0];
+        }
+        Object array = Array.newInstance(type, values.size());
+        for (int i = 0; i < values.size(); i++) {
+            Object value = values.get(i);
+            if (type == String.class) {
+                value = value.toString();
+            } else if (type == Long.class) {
+                value = ((Number) value).longValue();
+            } else if (type == Double.class) {
+                value = ((Number) value).doubleValue();
+            }
+            Array.set(array, i, value);
+        }
+        return array;
+    }
+
+    private static Event nextEvent(JsonParser parser) {
+        if (!parser.hasNext()) {
+            throw invalid(parser, "Unexpected end of JSON input");
+        }
+        return parser.next();
+    }
+
+    private static IllegalArgumentException invalid(JsonParser parser, String message) {
+        return new IllegalArgumentException(message + " at " + parser.getLocation());
+    }
+
+    /**
+     * JSON object or array currently parsed.
+     */
+    private static final class Frame {
+
+        private final @Nullable String configName;
+        private final String configNamePrefix;
+        private final boolean collection;
+        private final Map<String, Object> values = new LinkedHashMap<>();
+        private int itemCount;
+
+        /**
+         * @param configName Config name of configuration or configuration collection,
+         *     null for the object containing multiple configurations
+         * @param configNamePrefix Config name prefix of nested configurations, or collection parent config name
+         * @param collection True for configuration collections
+         */
+        Frame(@Nullable String configName, String configNamePrefix, boolean collection) {
+            this.configName = configName;
+            this.configNamePrefix = configNamePrefix;
+            this.collection = collection;
+        }
+
+        Frame nextItem(ConfigurationNameMappingCache configNameMapping) {
+            String itemConfigName = configNamePrefix + "/" + ConfigurationPersistHelper.ITEM_NAME_PREFIX + itemCount++;
+            return new Frame(
+                    itemConfigName, configNameMapping.getCollectionItemConfigName(itemConfigName) + "/", false);
+        }
+    }
+}
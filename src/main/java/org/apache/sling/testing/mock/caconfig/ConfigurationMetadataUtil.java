@@ -18,34 +18,37 @@
  */
 package org.apache.sling.testing.mock.caconfig;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Dictionary;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Vector;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.caconfig.annotation.Configuration;
-import org.apache.sling.testing.mock.osgi.ManifestScanner;
-import org.apache.sling.testing.mock.osgi.MockOsgi;
 import org.jetbrains.annotations.NotNull;
-import org.osgi.framework.Bundle;
+import org.jetbrains.annotations.Nullable;
 import org.osgi.framework.BundleContext;
-import org.osgi.framework.BundleEvent;
-import org.osgi.framework.BundleException;
-import org.osgi.framework.ServiceReference;
-import org.osgi.framework.Version;
 import org.reflections.Reflections;
+import org.reflections.util.ClasspathHelper;
+import org.reflections.util.ConfigurationBuilder;
+import org.reflections.util.FilterBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import static org.apache.sling.caconfig.impl.ConfigurationNameConstants.CONFIGURATION_CLASSES_HEADER;
 
@@ -55,21 +58,83 @@ import static org.apache.sling.caconfig.impl.ConfigurationNameConstants.CONFIGUR
 @SuppressWarnings("null")
 final class ConfigurationMetadataUtil {
 
-    private static final @NotNull String @NotNull [] CONFIGURATION_CLASSES_FROM_MANIFEST;
-    private static final @NotNull ConcurrentMap<String, List<Class>> CONFIGURATION_CLASSES_FOR_PACKAGES =
-            new ConcurrentHashMap<>();
+    private static final String MANIFEST_RESOURCE = "META-INF/MANIFEST.MF";
 
-    static {
-        // scan classpath for configuration classes bundle header entries only once
-        CONFIGURATION_CLASSES_FROM_MANIFEST = toArray(ManifestScanner.getValues(CONFIGURATION_CLASSES_HEADER));
-    }
+    // class names per package, scoped by class loader; keys are weak and values hold no class references,
+    // so discarded class loaders can be garbage collected
+    private static final @NotNull Map<ClassLoader, ClassLoaderCache> CLASS_LOADER_CACHES =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final Logger log = LoggerFactory.getLogger(ConfigurationMetadataUtil.class);
 
     private ConfigurationMetadataUtil() {
         // static methods only
     }
 
-    private static String[] toArray(Collection<String> values) {
-        return values.toArray(new String[values.size()]);
+    /**
+     * Starts the scan of the MANIFEST.MF files in the classpath for configuration classes bundle header entries
+     * in background, if not started already. Returns immediately.
+     */
+    static void startManifestScan() {
+        ManifestScanHolder.touch();
+    }
+
+    private static Collection<String> getManifestValues() {
+        ScanResultDiskCache diskCache = ScanResultDiskCache.get(ConfigurationMetadataUtil.class.getClassLoader());
+        if (diskCache != null) {
+            Collection<String> values = diskCache.getManifestClassNames();
+            if (values != null) {
+                return values;
+            }
+        }
+        long start = SetupTimings.start();
+        Collection<String> values = scanManifestValues(CONFIGURATION_CLASSES_HEADER);
+        SetupTimings.record("scanManifests", start);
+        if (diskCache != null) {
+            diskCache.putManifestClassNames(values);
+        }
+        return values;
+    }
+
+    /**
+     * Reads the given header from all MANIFEST.MF files in the classpath, reading the files in parallel.
+     * @param headerName Header name
+     * @return Distinct header values in classpath order
+     */
+    static @NotNull Collection<String> scanManifestValues(@NotNull String headerName) {
+        List<URL> urls;
+        try {
+            urls = Collections.list(
+                    ConfigurationMetadataUtil.class.getClassLoader().getResources(MANIFEST_RESOURCE));
+        } catch (IOException ex) {
+            log.warn("Unable to read JAR manifests.", ex);
+            return List.of();
+        }
+        List<List<String>> valuesPerManifest = urls.parallelStream()
+                .map(url -> readManifestValues(url, headerName))
+                .collect(Collectors.toList());
+        Set<String> result = new LinkedHashSet<>();
+        valuesPerManifest.forEach(result::addAll);
+        return result;
+    }
+
+    private static List<String> readManifestValues(URL url, String headerName) {
+        try (InputStream is = url.openStream()) {
+            String value = new Manifest(is).getMainAttributes().getValue(headerName);
+            if (value == null) {
+                return List.of();
+            }
+            List<String> result = new ArrayList<>();
+            for (String item : StringUtils.split(value, ",")) {
+                if (StringUtils.isNotBlank(item)) {
+                    result.add(item.trim());
+                }
+            }
+            return result;
+        } catch (IOException ex) {
+            log.warn("Unable to read JAR manifest {}", url, ex);
+            return List.of();
+        }
     }
 
     /**
@@ -79,9 +144,25 @@ final class ConfigurationMetadataUtil {
      */
     public static void registerAnnotationClasses(
             @NotNull BundleContext bundleContext, @NotNull String @NotNull ... classNames) {
-        Bundle bundle = new RegisterConfigurationMetadataBundle(bundleContext, Bundle.ACTIVE, classNames);
-        BundleEvent event = new BundleEvent(BundleEvent.STARTED, bundle);
-        MockOsgi.sendBundleEvent(bundleContext, event);
+        if (LazyServiceActivator.deferAnnotationClasses(bundleContext, classNames)) {
+            return;
+        }
+        long start = SetupTimings.start();
+        // register with shared, pre-parsed metadata instead of sending a bundle event to
+        // AnnotationClassConfigurationMetadataProvider which would parse the classes again for each context
+        SharedConfigurationMetadataProvider provider = SharedConfigurationMetadataProvider.getOrRegister(bundleContext);
+        ClassLoader classLoader = ConfigurationMetadataUtil.class.getClassLoader();
+        for (String className : classNames) {
+            if (StringUtils.isBlank(className)) {
+                continue;
+            }
+            try {
+                provider.addAnnotationClass(classLoader.loadClass(className.trim()));
+            } catch (ClassNotFoundException ex) {
+                log.warn("Unable to load configuration class: {}", className, ex);
+            }
+        }
+        SetupTimings.record("registerAnnotationClasses", start);
     }
 
     /**
@@ -103,197 +184,169 @@ final class ConfigurationMetadataUtil {
      * @param bundleContext Bundle context
      */
     public static void addAnnotationClassesForManifestEntries(BundleContext bundleContext) {
-        if (CONFIGURATION_CLASSES_FROM_MANIFEST.length > 0) {
-            registerAnnotationClasses(bundleContext, CONFIGURATION_CLASSES_FROM_MANIFEST);
+        long start = SetupTimings.start();
+        String[] classNames = ManifestScanHolder.SCAN.join();
+        if (classNames.length > 0) {
+            registerAnnotationClasses(bundleContext, classNames);
         }
+        SetupTimings.record("manifestAnnotationClasses", start);
     }
 
     /**
-     * Get configuration classes in list of packages (and subpackages), and cache result in static map.
+     * Get configuration classes in list of packages (and subpackages), and cache result per package and class loader.
+     * The order of the package names is not relevant, results for packages already scanned are reused and only
+     * the missing packages are scanned, in parallel. Concurrent callers requesting the same package share one scan.
+     * If a configuration class index generated by the annotation processor is present in the classpath, it is used
+     * instead of scanning the classpath roots containing an index file. All other classpath roots are scanned,
+     * using the optional {@link ScanResultDiskCache} shared between JVMs.
      * @param packageNames Package names
      * @return List of classes
      */
     public static Collection<Class> getConfigurationClassesForPackages(@NotNull String packageNames) {
-        List<Class> classes = CONFIGURATION_CLASSES_FOR_PACKAGES.get(packageNames);
-        if (classes == null) {
-            classes = new ArrayList<Class>();
-            String[] packageNameArray = StringUtils.split(packageNames, ",");
-            // add "." to each package name because it's a prefix, not a package name
-            Object[] prefixArray = new Object[packageNameArray.length];
-            for (int i = 0; i < packageNameArray.length; i++) {
-                prefixArray[i] = packageNameArray[i] + ".";
+        ClassLoader classLoader = getClassLoader();
+        ClassLoaderCache cache = getClassLoaderCache(classLoader);
+        List<CompletableFuture<List<String>>> futures = new ArrayList<>();
+        for (String packageName : normalizePackageNames(packageNames)) {
+            futures.add(cache.classNamesForPackages.computeIfAbsent(
+                    packageName,
+                    key -> CompletableFuture.supplyAsync(
+                            () -> getConfigurationClassNamesForPackage(key, cache.index, classLoader),
+                            ForkJoinPool.commonPool())));
+        }
+        Set<Class> classes = new LinkedHashSet<>();
+        for (CompletableFuture<List<String>> future : futures) {
+            for (String className : join(cache, future)) {
+                Class<?> clazz = loadClass(className, classLoader);
+                // ignore stale entries from index or disk cache
+                if (clazz != null && clazz.isAnnotationPresent(Configuration.class)) {
+                    classes.add(clazz);
+                }
             }
-            Reflections reflections = new Reflections(prefixArray);
-            classes.addAll(reflections.getTypesAnnotatedWith(Configuration.class));
-            CONFIGURATION_CLASSES_FOR_PACKAGES.putIfAbsent(packageNames, classes);
         }
-        return classes;
+        return new ArrayList<>(classes);
     }
 
-    private static class RegisterConfigurationMetadataBundle implements Bundle {
-
-        private final BundleContext bundleContext;
-        private final int state;
-        private final String classNames;
-
-        public RegisterConfigurationMetadataBundle(BundleContext bundleContext, int state, String[] classNames) {
-            this.bundleContext = bundleContext;
-            this.state = state;
-            this.classNames = normalizeValueList(classNames);
-        }
-
-        private String normalizeValueList(String[] values) {
-            if (values == null || values.length == 0) {
-                return null;
+    /**
+     * @param packageNames Comma-separated package names
+     * @return Trimmed, sorted and distinct package names
+     */
+    static @NotNull Set<String> normalizePackageNames(@NotNull String packageNames) {
+        Set<String> result = new TreeSet<>();
+        for (String packageName : StringUtils.split(packageNames, ",")) {
+            if (StringUtils.isNotBlank(packageName)) {
+                result.add(packageName.trim());
             }
-            return StringUtils.join(values, ",");
-        }
-
-        @Override
-        public int getState() {
-            return this.state;
-        }
-
-        @Override
-        public Dictionary<String, String> getHeaders() {
-            Dictionary<String, String> headers = new Hashtable<>();
-            headers.put(CONFIGURATION_CLASSES_HEADER, classNames);
-            return headers;
-        }
-
-        @Override
-        public Enumeration<URL> findEntries(String path, String filePattern, boolean recurse) {
-            return new Vector<URL>().elements();
-        }
-
-        @Override
-        public Class<?> loadClass(String name) throws ClassNotFoundException {
-            return getClass().getClassLoader().loadClass(name);
-        }
-
-        @Override
-        public BundleContext getBundleContext() {
-            return bundleContext;
-        }
-
-        @Override
-        public void start(int options) throws BundleException {
-            // do nothing
-        }
-
-        @Override
-        public void start() throws BundleException {
-            // do nothing
-        }
-
-        @Override
-        public void stop(int options) throws BundleException {
-            // do nothing
-        }
-
-        @Override
-        public void stop() throws BundleException {
-            // do nothing
-        }
-
-        @Override
-        public void update(InputStream input) throws BundleException {
-            // do nothing
-        }
-
-        @Override
-        public void update() throws BundleException {
-            // do nothing
-        }
-
-        @Override
-        public void uninstall() throws BundleException {
-            // do nothing
-        }
-
-        @Override
-        public long getBundleId() {
-            return 0;
-        }
-
-        @Override
-        public String getLocation() {
-            return null;
-        }
-
-        @Override
-        public ServiceReference<?>[] getRegisteredServices() { // NOPMD
-            return null;
-        }
-
-        @Override
-        public ServiceReference<?>[] getServicesInUse() { // NOPMD
-            return null;
         }
+        return result;
+    }
 
-        @Override
-        public boolean hasPermission(Object permission) {
-            return false;
-        }
+    /**
+     * @return Number of class loaders with cached scan results (for tests)
+     */
+    static int getClassLoaderCacheCount() {
+        return CLASS_LOADER_CACHES.size();
+    }
 
-        @Override
-        public URL getResource(String name) {
-            return null;
-        }
+    private static ClassLoaderCache getClassLoaderCache(ClassLoader classLoader) {
+        return CLASS_LOADER_CACHES.computeIfAbsent(classLoader, ClassLoaderCache::new);
+    }
 
-        @Override
-        public Dictionary<String, String> getHeaders(String locale) {
-            return null;
+    private static List<String> join(ClassLoaderCache cache, CompletableFuture<List<String>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            // do not cache failed scans
+            cache.classNamesForPackages.values().remove(future);
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
         }
+    }
 
-        @Override
-        public String getSymbolicName() {
-            return null;
+    private static List<String> getConfigurationClassNamesForPackage(
+            String packageName, @Nullable ConfigurationClassIndex index, ClassLoader classLoader) {
+        Set<String> result = new TreeSet<>();
+        if (index != null) {
+            result.addAll(index.getConfigurationClassNames(packageName));
         }
 
-        @Override
-        public Enumeration<URL> getResources(String name) throws IOException {
-            return null;
+        // scan classpath roots not covered by the index
+        ScanResultDiskCache diskCache = ScanResultDiskCache.get(classLoader);
+        List<String> scannedClassNames = diskCache != null ? diskCache.getPackageClassNames(packageName) : null;
+        if (scannedClassNames == null) {
+            scannedClassNames = scanConfigurationClassNames(packageName, index, classLoader);
+            if (diskCache != null) {
+                diskCache.putPackageClassNames(packageName, scannedClassNames);
+            }
         }
+        result.addAll(scannedClassNames);
+        return new ArrayList<>(result);
+    }
 
-        @Override
-        public Enumeration<String> getEntryPaths(String path) {
+    private static @Nullable Class<?> loadClass(String className, ClassLoader classLoader) {
+        try {
+            return Class.forName(className, false, classLoader);
+        } catch (ClassNotFoundException | LinkageError ex) {
             return null;
         }
+    }
 
-        @Override
-        public URL getEntry(String path) {
-            return null;
-        }
+    private static List<String> scanConfigurationClassNames(
+            String packageName, @Nullable ConfigurationClassIndex index, ClassLoader classLoader) {
+        // add "." to package name because it's a prefix, not a package name
+        String prefix = packageName + ".";
+        Collection<URL> urls = new ArrayList<>(ClasspathHelper.forPackage(prefix, classLoader));
+        if (index != null) {
+            urls.removeIf(index::isIndexed);
+        }
+        if (urls.isEmpty()) {
+            return List.of();
+        }
+        long start = SetupTimings.start();
+        Reflections reflections = new Reflections(new ConfigurationBuilder()
+                .setUrls(urls)
+                .filterInputsBy(new FilterBuilder().includePackage(prefix))
+                .setClassLoaders(new ClassLoader[] {classLoader}));
+        List<String> result = reflections.getTypesAnnotatedWith(Configuration.class).stream()
+                .map(Class::getName)
+                .sorted()
+                .collect(Collectors.toList());
+        SetupTimings.record("scanConfigurationClasses", start);
+        return result;
+    }
 
-        @Override
-        public long getLastModified() {
-            return 0;
+    private static ClassLoader getClassLoader() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = ConfigurationMetadataUtil.class.getClassLoader();
         }
+        return classLoader;
+    }
 
-        @Override
-        public Map<X509Certificate, List<X509Certificate>> getSignerCertificates(int signersType) {
-            return null;
-        }
+    /**
+     * Lazy holder, starts the manifest scan in background when referenced for the first time.
+     */
+    private static final class ManifestScanHolder {
+        static final CompletableFuture<String[]> SCAN = CompletableFuture.supplyAsync(
+                () -> getManifestValues().toArray(new String[0]), ForkJoinPool.commonPool());
 
-        @Override
-        public Version getVersion() {
-            return null;
+        static void touch() {
+            // class initialization starts the scan
         }
+    }
 
-        @Override
-        public int compareTo(Bundle o) {
-            return 0;
-        }
+    /**
+     * Cached scan results for one class loader. Holds only class names, no reference to the class loader.
+     */
+    private static final class ClassLoaderCache {
 
-        @Override
-        public <A> A adapt(Class<A> type) {
-            return null;
-        }
+        private final @Nullable ConfigurationClassIndex index;
+        private final ConcurrentMap<String, CompletableFuture<List<String>>> classNamesForPackages =
+                new ConcurrentHashMap<>();
 
-        @Override
-        public File getDataFile(String filename) {
-            return null;
+        ClassLoaderCache(ClassLoader classLoader) {
+            this.index = ConfigurationClassIndex.read(classLoader);
         }
     }
 }
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.caconfig.management.multiplexer.ConfigurationPersistenceStrategyMultiplexer;
+import org.apache.sling.caconfig.management.multiplexer.ConfigurationResourceResolvingStrategyMultiplexer;
+import org.apache.sling.testing.mock.sling.context.SlingContextImpl;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+
+/**
+ * Caches the config name mappings of the configuration persistence strategies for a context.
+ * The cache is cleared whenever a configuration persistence strategy is registered, modified or unregistered.
+ */
+final class ConfigurationNameMappingCache implements ServiceListener {
+
+    static final String PERSISTENCE_STRATEGY_FILTER = "(|"
+            + "(objectClass=org.apache.sling.caconfig.spi.ConfigurationPersistenceStrategy)"
+            + "(objectClass=org.apache.sling.caconfig.spi.ConfigurationPersistenceStrategy2))";
+
+    static final String CONFIGS_BUCKET_NAME = "sling:configs";
+
+    private final ConfigurationPersistenceStrategyMultiplexer configurationPersistenceStrategy;
+    private final ConfigurationResourceResolvingStrategyMultiplexer configurationResourceResolvingStrategy;
+    private final ConcurrentMap<String, String> configNames = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> collectionParentConfigNames = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> collectionItemConfigNames = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Boolean> collectionItemAddressable = new ConcurrentHashMap<>();
+
+    ConfigurationNameMappingCache(
+            @NotNull ConfigurationPersistenceStrategyMultiplexer configurationPersistenceStrategy,
+            @Nullable ConfigurationResourceResolvingStrategyMultiplexer configurationResourceResolvingStrategy) {
+        this.configurationPersistenceStrategy = configurationPersistenceStrategy;
+        this.configurationResourceResolvingStrategy = configurationResourceResolvingStrategy;
+    }
+
+    /**
+     * Get the cache registered in the given context, and register a new one if none exists.
+     * @param context Sling context
+     * @param configurationPersistenceStrategy Configuration persistence strategy multiplexer of the context
+     * @return Cache
+     */
+    static synchronized @NotNull ConfigurationNameMappingCache get(
+            @NotNull SlingContextImpl context,
+            @NotNull ConfigurationPersistenceStrategyMultiplexer configurationPersistenceStrategy) {
+        ConfigurationNameMappingCache cache = context.getService(ConfigurationNameMappingCache.class);
+        if (cache == null) {
+            cache = new ConfigurationNameMappingCache(
+                    configurationPersistenceStrategy,
+                    context.getService(ConfigurationResourceResolvingStrategyMultiplexer.class));
+            try {
+                context.bundleContext().addServiceListener(cache, PERSISTENCE_STRATEGY_FILTER);
+            } catch (InvalidSyntaxException ex) {
+                throw new IllegalStateException("Invalid filter: " + PERSISTENCE_STRATEGY_FILTER, ex);
+            }
+            context.registerService(ConfigurationNameMappingCache.class, cache);
+        }
+        return cache;
+    }
+
+    @NotNull
+    String getConfigName(@NotNull String configName) {
+        return configNames.computeIfAbsent(
+                configName,
+                name -> StringUtils.defaultString(configurationPersistenceStrategy.getConfigName(name, null), name));
+    }
+
+    @NotNull
+    String getCollectionParentConfigName(@NotNull String configName) {
+        return collectionParentConfigNames.computeIfAbsent(
+                configName,
+                name -> StringUtils.defaultString(
+                        configurationPersistenceStrategy.getCollectionParentConfigName(name, null), name));
+    }
+
+    @NotNull
+    String getCollectionItemConfigName(@NotNull String configName) {
+        return collectionItemConfigNames.computeIfAbsent(
+                configName,
+                name -> StringUtils.defaultString(
+                        configurationPersistenceStrategy.getCollectionItemConfigName(name, null), name));
+    }
+
+    /**
+     * Checks if the items of the given configuration collection can be written and deleted one by one via the
+     * config name <code>{collection parent config name}/{item name}</code>. This is the case if the persistence
+     * strategy maps this config name to the same resource path as the collection item, so persisting it
+     * updates the item in place, and deleting it removes the whole item resource.
+     * @param configName Config name of configuration collection
+     * @return true if collection items can be written one by one
+     */
+    boolean isCollectionItemAddressable(@NotNull String configName) {
+        return collectionItemAddressable.computeIfAbsent(configName, name -> {
+            String itemName = "item0";
+            String itemConfigPath = "/" + getCollectionParentConfigName(name) + "/" + itemName;
+            String collectionParentPath = configurationPersistenceStrategy.getCollectionParentResourcePath("/" + name);
+            if (collectionParentPath == null) {
+                return false;
+            }
+            String collectionItemPath = configurationPersistenceStrategy.getCollectionItemResourcePath(
+                    collectionParentPath + "/" + itemName);
+            return collectionItemPath != null
+                    && Objects.equals(
+                            configurationPersistenceStrategy.getResourcePath(itemConfigPath), collectionItemPath)
+                    && Objects.equals(collectionParentPath + "/" + itemName, itemConfigPath);
+        });
+    }
+
+    /**
+     * Get the resource path the configuration manager writes the given configuration to for the context resource.
+     * Like the configuration manager, it maps the resolved path with the persistence strategies, but not the
+     * config name itself.
+     * @param contextResource Context resource
+     * @param configName Config name
+     * @return Resource path, or null if it cannot be determined
+     */
+    @Nullable
+    String getWritebackResourcePath(@NotNull Resource contextResource, @NotNull String configName) {
+        if (configurationResourceResolvingStrategy == null) {
+            return null;
+        }
+        String path = configurationResourceResolvingStrategy.getResourcePath(
+                contextResource, CONFIGS_BUCKET_NAME, configName);
+        return path != null ? configurationPersistenceStrategy.getResourcePath(path) : null;
+    }
+
+    /**
+     * Get the resource path the configuration manager writes the given configuration collection item to for the
+     * context resource.
+     * @param contextResource Context resource
+     * @param configName Config name of configuration collection
+     * @param itemName Collection item name
+     * @return Resource path, or null if it cannot be determined
+     */
+    @Nullable
+    String getWritebackCollectionItemResourcePath(
+            @NotNull Resource contextResource, @NotNull String configName, @NotNull String itemName) {
+        if (configurationResourceResolvingStrategy == null) {
+            return null;
+        }
+        String path = configurationResourceResolvingStrategy.getResourceCollectionParentPath(
+                contextResource, CONFIGS_BUCKET_NAME, getCollectionParentConfigName(configName));
+        if (path == null) {
+            return null;
+        }
+        String parentPath = configurationPersistenceStrategy.getCollectionParentResourcePath(path);
+        return parentPath != null
+                ? configurationPersistenceStrategy.getCollectionItemResourcePath(parentPath + "/" + itemName)
+                : null;
+    }
+
+    @Override
+    public void serviceChanged(ServiceEvent event) {
+        configNames.clear();
+        collectionParentConfigNames.clear();
+        collectionItemConfigNames.clear();
+        collectionItemAddressable.clear();
+    }
+}
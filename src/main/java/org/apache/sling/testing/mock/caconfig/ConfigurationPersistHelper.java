@@ -18,41 +18,138 @@
  */
 package org.apache.sling.testing.mock.caconfig;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedHashMap;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.ObjIntConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.caconfig.management.ConfigurationCollectionData;
+import org.apache.sling.caconfig.management.ConfigurationData;
 import org.apache.sling.caconfig.management.ConfigurationManager;
 import org.apache.sling.caconfig.management.multiplexer.ConfigurationPersistenceStrategyMultiplexer;
 import org.apache.sling.caconfig.spi.ConfigurationCollectionPersistData;
 import org.apache.sling.caconfig.spi.ConfigurationPersistData;
+import org.apache.sling.caconfig.spi.ConfigurationPersistenceException;
 import org.apache.sling.testing.mock.sling.context.SlingContextImpl;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Writes context-aware configuration contains in maps and nested maps via {@link ConfigurationManager} to repository.
  */
 class ConfigurationPersistHelper {
 
+    static final String ITEM_NAME_PREFIX = "item";
+    static final int STREAM_CHUNK_SIZE = 500;
+
+    // ConfigurationData.isInherited() is only available in impl 1.4 and higher
+    private static final MethodHandle IS_INHERITED = getIsInheritedMethod();
+
     private final ConfigurationManager configManager;
-    private final ConfigurationPersistenceStrategyMultiplexer configurationPersistenceStrategy;
+    private final ConfigurationNameMappingCache configNameMapping;
     private final Resource contextResource;
+    private final boolean incremental;
 
     /**
      * @param context Sling context
      * @param contextPath Context path
      */
     ConfigurationPersistHelper(@NotNull SlingContextImpl context, @NotNull String contextPath) {
-        configManager = context.getService(ConfigurationManager.class);
-        configurationPersistenceStrategy = context.getService(ConfigurationPersistenceStrategyMultiplexer.class);
-        contextResource = context.resourceResolver().getResource(contextPath);
+        this(context, contextPath, context.resourceResolver());
+    }
+
+    /**
+     * @param context Sling context
+     * @param contextPath Context path
+     * @param resourceResolver Resource resolver used for resolving the context resource and persisting
+     */
+    ConfigurationPersistHelper(
+            @NotNull SlingContextImpl context,
+            @NotNull String contextPath,
+            @NotNull ResourceResolver resourceResolver) {
+        this(
+                getConfigurationManager(context),
+                getConfigNameMapping(context),
+                getContextResource(resourceResolver, contextPath));
+    }
+
+    /**
+     * @param configManager Configuration manager
+     * @param configNameMapping Config name mapping of the configuration persistence strategies
+     * @param contextResource Context resource
+     */
+    ConfigurationPersistHelper(
+            @NotNull ConfigurationManager configManager,
+            @NotNull ConfigurationNameMappingCache configNameMapping,
+            @NotNull Resource contextResource) {
+        this(configManager, configNameMapping, contextResource, false);
+    }
+
+    /**
+     * @param configManager Configuration manager
+     * @param configNameMapping Config name mapping of the configuration persistence strategies
+     * @param contextResource Context resource
+     * @param incremental If true, the currently persisted configuration is read before writing, and only
+     *     configurations and collection items with changed values are written
+     */
+    ConfigurationPersistHelper(
+            @NotNull ConfigurationManager configManager,
+            @NotNull ConfigurationNameMappingCache configNameMapping,
+            @NotNull Resource contextResource,
+            boolean incremental) {
+        this.configManager = configManager;
+        this.configNameMapping = configNameMapping;
+        this.contextResource = contextResource;
+        this.incremental = incremental;
+    }
+
+    /**
+     * Get configuration manager, activating the services first if the lazy plugin is used.
+     * @param context Sling context
+     * @return Configuration manager
+     */
+    static @NotNull ConfigurationManager getConfigurationManager(@NotNull SlingContextImpl context) {
+        LazyServiceActivator.activateIfPresent(context);
+        return context.getService(ConfigurationManager.class);
+    }
+
+    /**
+     * Get config name mapping cache of the context. Call {@link #getConfigurationManager(SlingContextImpl)} first.
+     * @param context Sling context
+     * @return Config name mapping cache
+     */
+    static @NotNull ConfigurationNameMappingCache getConfigNameMapping(@NotNull SlingContextImpl context) {
+        return ConfigurationNameMappingCache.get(
+                context, context.getService(ConfigurationPersistenceStrategyMultiplexer.class));
+    }
+
+    /**
+     * @param resourceResolver Resource resolver
+     * @param contextPath Context path
+     * @return Context resource
+     * @throws IllegalArgumentException if no resource exists at the context path
+     */
+    static @NotNull Resource getContextResource(
+            @NotNull ResourceResolver resourceResolver, @NotNull String contextPath) {
+        Resource contextResource = resourceResolver.getResource(contextPath);
         if (contextResource == null) {
             throw new IllegalArgumentException("No resource found at" + contextPath);
         }
+        return contextResource;
     }
 
     /**
@@ -62,83 +159,498 @@ class ConfigurationPersistHelper {
      * @param values Configuration values
      */
     void writeConfiguration(@NotNull String configName, @NotNull Map<String, Object> values) {
-        // write properties of main configuration
+        Deque<WriteTask> tasks = new ArrayDeque<>();
+        tasks.push(new WriteTask(configName, values, null));
+        processTasks(tasks);
+    }
+
+    /**
+     * Writes a collection of configuration parameters using the primary configured persistence provider.
+     * @param configName Config name
+     * @param values Configuration values
+     */
+    void writeConfigurationCollection(
+            @NotNull String configName, @NotNull Collection<@NotNull Map<String, Object>> values) {
+        Deque<WriteTask> tasks = new ArrayDeque<>();
+        tasks.push(new WriteTask(configName, null, values));
+        processTasks(tasks);
+    }
+
+    /**
+     * Writes a collection of configuration parameters using the primary configured persistence provider.
+     * The stream is consumed only once and closed afterwards. The items are converted while they are written, in
+     * chunks of {@value #STREAM_CHUNK_SIZE} items with one commit per chunk, so the memory used does not depend
+     * on the size of the collection. If the context resource belongs to a {@link ConfigurationBatch}, the changes
+     * are committed by the batch instead.
+     * If the persistence strategy does not support writing single collection items, all items are collected and
+     * written at once.
+     * @param configName Config name
+     * @param values Configuration values
+     */
+    void writeConfigurationCollection(@NotNull String configName, @NotNull Stream<Map<String, Object>> values) {
+        try (Stream<Map<String, Object>> stream = values) {
+            if (!configNameMapping.isCollectionItemAddressable(configName)) {
+                writeConfigurationCollection(configName, stream.collect(Collectors.toList()));
+            } else if (contextResource.getResourceResolver() instanceof DeferredCommitResourceResolver) {
+                writeCollectionChunks(configName, stream.iterator(), null);
+            } else {
+                DeferredCommitResourceResolver resourceResolver =
+                        new DeferredCommitResourceResolver(contextResource.getResourceResolver());
+                new ConfigurationPersistHelper(
+                                configManager,
+                                configNameMapping,
+                                getContextResource(resourceResolver, contextResource.getPath()),
+                                incremental)
+                        .writeCollectionChunks(configName, stream.iterator(), resourceResolver);
+            }
+        }
+    }
+
+    private void writeCollectionChunks(
+            String configName,
+            Iterator<Map<String, Object>> values,
+            @Nullable DeferredCommitResourceResolver resourceResolver) {
+        String collectionParentConfigName = configNameMapping.getCollectionParentConfigName(configName);
+        Iterator<ConfigurationDataParts> items = new Iterator<ConfigurationDataParts>() {
+            @Override
+            public boolean hasNext() {
+                return values.hasNext();
+            }
+
+            @Override
+            public ConfigurationDataParts next() {
+                return new ConfigurationDataParts(values.next());
+            }
+        };
+        ObjIntConsumer<ConfigurationDataParts> afterItem = (parts, index) -> {
+            Deque<WriteTask> tasks = new ArrayDeque<>();
+            pushCollectionItemTasks(tasks, collectionParentConfigName, ITEM_NAME_PREFIX + index, parts);
+            processTasks(tasks);
+            if (resourceResolver != null && (index + 1) % STREAM_CHUNK_SIZE == 0) {
+                commit(resourceResolver);
+            }
+        };
+
+        if (!incremental || !persistCollectionItems(configName, collectionParentConfigName, items, afterItem)) {
+            // the first chunk replaces the existing collection, further items are added one by one
+            List<ConfigurationDataParts> chunk = new ArrayList<>();
+            while (chunk.size() < STREAM_CHUNK_SIZE && items.hasNext()) {
+                chunk.add(items.next());
+            }
+            persistCollectionParts(configName, chunk);
+            for (int index = 0; index < chunk.size(); index++) {
+                afterItem.accept(chunk.get(index), index);
+            }
+            int index = chunk.size();
+            chunk.clear();
+            while (items.hasNext()) {
+                ConfigurationDataParts parts = items.next();
+                configManager.persistConfiguration(
+                        contextResource,
+                        collectionParentConfigName + "/" + ITEM_NAME_PREFIX + index,
+                        new ConfigurationPersistData(parts.getValues()));
+                afterItem.accept(parts, index++);
+            }
+        }
+        if (resourceResolver != null) {
+            commit(resourceResolver);
+        }
+    }
+
+    private static void commit(DeferredCommitResourceResolver resourceResolver) {
+        try {
+            resourceResolver.commitDeferred();
+        } catch (PersistenceException ex) {
+            throw new ConfigurationPersistenceException("Unable to commit configuration changes.", ex);
+        }
+    }
+
+    /**
+     * Appends items to a configuration collection. The existing items are neither read nor written, the new items
+     * get the next free item names.
+     * @param configName Config name
+     * @param values Configuration values of the new items
+     */
+    void appendConfigurationCollectionItems(
+            @NotNull String configName, @NotNull Collection<@NotNull Map<String, Object>> values) {
+        String collectionParentConfigName = getItemAddressableCollectionParentConfigName(configName);
+        int index = getFreeItemIndex(collectionParentConfigName);
+        for (Map<String, Object> itemValues : values) {
+            while (getPersistedConfiguration(collectionParentConfigName + "/" + ITEM_NAME_PREFIX + index) != null) {
+                index++;
+            }
+            persistCollectionItem(collectionParentConfigName, ITEM_NAME_PREFIX + index++, itemValues);
+        }
+    }
+
+    /**
+     * Replaces the values of a single item of a configuration collection.
+     * @param configName Config name
+     * @param itemName Collection item name
+     * @param values Configuration values
+     * @throws IllegalArgumentException if the item does not exist
+     */
+    void updateConfigurationCollectionItem(
+            @NotNull String configName, @NotNull String itemName, @NotNull Map<String, Object> values) {
+        String collectionParentConfigName = getItemAddressableCollectionParentConfigName(configName);
+        if (getPersistedConfiguration(collectionParentConfigName + "/" + itemName) == null) {
+            throw new IllegalArgumentException("No collection item '" + itemName + "' found in configuration "
+                    + configName + " for " + contextResource.getPath());
+        }
+        persistCollectionItem(collectionParentConfigName, itemName, values);
+    }
+
+    /**
+     * Replaces the values of a single item of a configuration collection. Only the item names of the collection
+     * are read to look up the item at the given position.
+     * @param configName Config name
+     * @param index Position of the item in the collection
+     * @param values Configuration values
+     * @throws IllegalArgumentException if no item exists at the given position
+     */
+    void updateConfigurationCollectionItem(@NotNull String configName, int index, @NotNull Map<String, Object> values) {
+        String collectionParentConfigName = getItemAddressableCollectionParentConfigName(configName);
+        String itemName = null;
+        if (index >= 0) {
+            Iterator<ConfigurationData> items = configManager
+                    .getConfigurationCollection(contextResource, configName)
+                    .getItems()
+                    .iterator();
+            for (int i = 0; i <= index && items.hasNext(); i++) {
+                ConfigurationData item = items.next();
+                if (i == index) {
+                    itemName = item.getCollectionItemName();
+                }
+            }
+        }
+        if (itemName == null) {
+            throw new IllegalArgumentException("No collection item at index " + index + " found in configuration "
+                    + configName + " for " + contextResource.getPath());
+        }
+        persistCollectionItem(collectionParentConfigName, itemName, values);
+    }
+
+    /**
+     * Removes items from a configuration collection. Items that do not exist are ignored.
+     * @param configName Config name
+     * @param itemNames Collection item names
+     */
+    void removeConfigurationCollectionItems(@NotNull String configName, @NotNull Collection<String> itemNames) {
+        String collectionParentConfigName = getItemAddressableCollectionParentConfigName(configName);
+        for (String itemName : itemNames) {
+            configManager.deleteConfiguration(contextResource, collectionParentConfigName + "/" + itemName);
+        }
+    }
+
+    private String getItemAddressableCollectionParentConfigName(String configName) {
+        if (!configNameMapping.isCollectionItemAddressable(configName)) {
+            throw new UnsupportedOperationException(
+                    "Configuration persistence strategy does not support writing single collection items of "
+                            + configName);
+        }
+        return configNameMapping.getCollectionParentConfigName(configName);
+    }
+
+    private void persistCollectionItem(String collectionParentConfigName, String itemName, Map<String, Object> values) {
         ConfigurationDataParts parts = new ConfigurationDataParts(values);
         configManager.persistConfiguration(
-                contextResource, configName, new ConfigurationPersistData(parts.getValues()));
+                contextResource,
+                collectionParentConfigName + "/" + itemName,
+                new ConfigurationPersistData(parts.getValues()));
+        Deque<WriteTask> tasks = new ArrayDeque<>();
+        pushCollectionItemTasks(tasks, collectionParentConfigName, itemName, parts);
+        processTasks(tasks);
+    }
 
-        // write nested configuration and nested configuration collections
-        for (Map.Entry<String, Map<String, Object>> nestedMap : parts.getMaps().entrySet()) {
-            writeConfiguration(getNestedConfigName(configName, nestedMap.getKey()), nestedMap.getValue());
+    /**
+     * Finds a free item index with a logarithmic number of lookups, assuming the items are named by their index.
+     * If items were removed before, a gap between the items may be found instead of the end.
+     */
+    private int getFreeItemIndex(String collectionParentConfigName) {
+        String itemConfigNamePrefix = collectionParentConfigName + "/" + ITEM_NAME_PREFIX;
+        if (getPersistedConfiguration(itemConfigNamePrefix + 0) == null) {
+            return 0;
         }
-        for (Map.Entry<String, Collection<Map<String, Object>>> nestedCollection :
-                parts.getCollections().entrySet()) {
-            writeConfigurationCollection(
-                    getNestedConfigName(configName, nestedCollection.getKey()), nestedCollection.getValue());
+        int existing = 0;
+        int missing = 1;
+        while (getPersistedConfiguration(itemConfigNamePrefix + missing) != null) {
+            existing = missing;
+            missing *= 2;
         }
+        while (missing - existing > 1) {
+            int middle = (existing + missing) >>> 1;
+            if (getPersistedConfiguration(itemConfigNamePrefix + middle) != null) {
+                existing = middle;
+            } else {
+                missing = middle;
+            }
+        }
+        return missing;
     }
 
     /**
-     * Writes a collection of configuration parameters using the primary configured persistence provider.
+     * Writes the properties of a single configuration resource. Nested configurations are not touched.
      * @param configName Config name
-     * @param values Configuration values
+     * @param values Configuration values without nested configurations
      */
-    void writeConfigurationCollection(
-            @NotNull String configName, @NotNull Collection<@NotNull Map<String, Object>> values) {
+    void persistConfigurationValues(@NotNull String configName, @NotNull Map<String, Object> values) {
+        configManager.persistConfiguration(contextResource, configName, new ConfigurationPersistData(values));
+    }
+
+    /**
+     * Deletes a configuration or configuration collection including all nested configurations.
+     * @param configName Config name
+     */
+    void deleteConfiguration(@NotNull String configName) {
+        configManager.deleteConfiguration(contextResource, configName);
+    }
+
+    /**
+     * @return Config name mapping of the configuration persistence strategies
+     */
+    @NotNull
+    ConfigurationNameMappingCache getNameMapping() {
+        return configNameMapping;
+    }
+
+    /**
+     * Processes the write tasks until the stack is empty. Each task persists its own values and pushes the tasks
+     * for its nested configurations, so the configurations are written in the same depth-first order as a
+     * recursive traversal, but with constant call stack depth.
+     */
+    private void processTasks(Deque<WriteTask> tasks) {
+        while (!tasks.isEmpty()) {
+            WriteTask task = tasks.pop();
+            if (task.collectionValues != null) {
+                persistCollection(tasks, task.configName, task.collectionValues);
+            } else {
+                persistSingleton(tasks, task.configName, task.values);
+            }
+        }
+    }
+
+    private void persistSingleton(Deque<WriteTask> tasks, String configName, Map<String, Object> values) {
+        // write properties of main configuration
+        ConfigurationDataParts parts = new ConfigurationDataParts(values);
+        if (!incremental || !isPersisted(configName, parts.getValues())) {
+            configManager.persistConfiguration(
+                    contextResource, configName, new ConfigurationPersistData(parts.getValues()));
+        }
+
+        // nested configuration and nested configuration collections
+        if (parts.hasNested()) {
+            pushNestedTasks(tasks, configNameMapping.getConfigName(configName) + "/", parts);
+        }
+    }
+
+    private void persistCollection(Deque<WriteTask> tasks, String configName, Collection<Map<String, Object>> values) {
         // split each collection item map in it's parts
-        Map<String, ConfigurationDataParts> partsCollection = new LinkedHashMap<>();
-        int index = 0;
+        List<ConfigurationDataParts> partsList = new ArrayList<>(values.size());
         for (Map<String, Object> map : values) {
-            partsCollection.put("item" + (index++), new ConfigurationDataParts(map));
+            partsList.add(new ConfigurationDataParts(map));
         }
+        String collectionParentConfigName = configNameMapping.getCollectionParentConfigName(configName);
 
         // write properties of main configuration collection
-        List<ConfigurationPersistData> items = partsCollection.entrySet().stream()
-                .map(entry ->
-                        new ConfigurationPersistData(entry.getValue().getValues()).collectionItemName(entry.getKey()))
-                .collect(Collectors.toList());
+        if (!incremental
+                || !persistCollectionItems(configName, collectionParentConfigName, partsList.iterator(), null)) {
+            persistCollectionParts(configName, partsList);
+        }
+
+        // nested configuration and nested configuration collections, first item on top of stack
+        for (int index = partsList.size() - 1; index >= 0; index--) {
+            pushCollectionItemTasks(tasks, collectionParentConfigName, ITEM_NAME_PREFIX + index, partsList.get(index));
+        }
+    }
+
+    private void persistCollectionParts(String configName, List<ConfigurationDataParts> partsList) {
+        List<ConfigurationPersistData> items = new ArrayList<>(partsList.size());
+        for (ConfigurationDataParts parts : partsList) {
+            items.add(new ConfigurationPersistData(parts.getValues())
+                    .collectionItemName(ITEM_NAME_PREFIX + items.size()));
+        }
         configManager.persistConfigurationCollection(
                 contextResource, configName, new ConfigurationCollectionPersistData(items));
+    }
 
-        // write nested configuration and nested configuration collections
-        for (Map.Entry<String, ConfigurationDataParts> entry : partsCollection.entrySet()) {
-            String itemName = entry.getKey();
-            ConfigurationDataParts parts = entry.getValue();
-            for (Map.Entry<String, Map<String, Object>> nestedMap :
-                    parts.getMaps().entrySet()) {
-                writeConfiguration(
-                        getNestedCollectionItemConfigName(configName, itemName, nestedMap.getKey()),
-                        nestedMap.getValue());
+    /**
+     * Checks if the given configuration is persisted in the context with exactly the given values.
+     */
+    private boolean isPersisted(String configName, Map<String, Object> values) {
+        ConfigurationData data = getPersistedConfiguration(configName);
+        return data != null && hasSameValues(data.getValues(), values);
+    }
+
+    /**
+     * @return Configuration data, or null if the configuration is not persisted in the context itself
+     */
+    private @Nullable ConfigurationData getPersistedConfiguration(String configName) {
+        ConfigurationData data = configManager.getConfiguration(contextResource, configName);
+        if (data == null || data.getResourcePath() == null || isInherited(data, configName)) {
+            return null;
+        }
+        return data;
+    }
+
+    /**
+     * Checks if the given configuration or configuration collection item is inherited from another context.
+     * The configuration manager looks up the writeback resource via the resource resolver, so configurations
+     * not stored in the resource tree (e.g. with {@link ContextPlugins#CACONFIG_INMEMORY}) are always reported
+     * as inherited. In this case, and with impl versions before 1.4 that do not provide
+     * {@link ConfigurationData#isInherited()}, the resolved resource path is compared with the writeback path.
+     */
+    private boolean isInherited(ConfigurationData data, String configName) {
+        if (IS_INHERITED != null && !invokeIsInherited(data)) {
+            return false;
+        }
+        String writebackPath = data.getCollectionItemName() != null
+                ? configNameMapping.getWritebackCollectionItemResourcePath(
+                        contextResource, configName, data.getCollectionItemName())
+                : configNameMapping.getWritebackResourcePath(contextResource, configName);
+        return writebackPath == null || !writebackPath.equals(data.getResourcePath());
+    }
+
+    private static boolean invokeIsInherited(ConfigurationData data) {
+        try {
+            return (boolean) IS_INHERITED.invokeExact(data);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new IllegalStateException("Unable to check inheritance of configuration " + data.getConfigName(), ex);
+        }
+    }
+
+    private static @Nullable MethodHandle getIsInheritedMethod() {
+        if (!ContextPlugins.getImplGeneration().isAtLeast(ImplGeneration.IMPL_1_4)) {
+            return null;
+        }
+        try {
+            return MethodHandles.publicLookup()
+                    .findVirtual(ConfigurationData.class, "isInherited", MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes only the changed, added and removed items of a configuration collection, compared with the items
+     * currently persisted in the context.
+     * @param afterItem Called after each item is processed with the item and its index, or null
+     * @return false if the collection has to be written as a whole instead, because the persisted items are not
+     *     named by their index, or the persistence strategy does not support writing single items
+     */
+    private boolean persistCollectionItems(
+            String configName,
+            String collectionParentConfigName,
+            Iterator<ConfigurationDataParts> items,
+            @Nullable ObjIntConsumer<ConfigurationDataParts> afterItem) {
+        ConfigurationCollectionData collectionData =
+                configManager.getConfigurationCollection(contextResource, configName);
+        List<ConfigurationData> persistedItems = new ArrayList<>();
+        for (ConfigurationData item : collectionData.getItems()) {
+            if (isInherited(item, configName)
+                    || !Objects.equals(ITEM_NAME_PREFIX + persistedItems.size(), item.getCollectionItemName())) {
+                return false;
             }
-            for (Map.Entry<String, Collection<Map<String, Object>>> nestedCollection :
-                    parts.getCollections().entrySet()) {
-                writeConfigurationCollection(
-                        getNestedCollectionItemConfigName(configName, itemName, nestedCollection.getKey()),
-                        nestedCollection.getValue());
+            persistedItems.add(item);
+        }
+        boolean itemWrites = configNameMapping.isCollectionItemAddressable(configName);
+
+        int index = 0;
+        while (items.hasNext()) {
+            ConfigurationDataParts parts = items.next();
+            Map<String, Object> values = parts.getValues();
+            if (index >= persistedItems.size()
+                    || !hasSameValues(persistedItems.get(index).getValues(), values)) {
+                if (!itemWrites) {
+                    return false;
+                }
+                configManager.persistConfiguration(
+                        contextResource,
+                        collectionParentConfigName + "/" + ITEM_NAME_PREFIX + index,
+                        new ConfigurationPersistData(values));
             }
+            if (afterItem != null) {
+                afterItem.accept(parts, index);
+            }
+            index++;
+        }
+        if (index < persistedItems.size() && !itemWrites) {
+            return false;
+        }
+        for (int removedIndex = persistedItems.size() - 1; removedIndex >= index; removedIndex--) {
+            configManager.deleteConfiguration(
+                    contextResource, collectionParentConfigName + "/" + ITEM_NAME_PREFIX + removedIndex);
         }
+        return true;
     }
 
-    private String getConfigName(@NotNull String configName) {
-        return StringUtils.defaultString(configurationPersistenceStrategy.getConfigName(configName, null), configName);
+    /**
+     * Compares persisted configuration values with new values. Values are compared as stored without conversion,
+     * so a value written with another type is persisted again. Arrays are compared by their elements. Nested
+     * configurations contained in the persisted values are ignored, they are compared separately.
+     */
+    private static boolean hasSameValues(@NotNull ValueMap persistedValues, @NotNull Map<String, Object> values) {
+        int persistedCount = 0;
+        for (Object persistedValue : persistedValues.values()) {
+            if (!(persistedValue instanceof ConfigurationData || persistedValue instanceof ConfigurationData[])) {
+                persistedCount++;
+            }
+        }
+        if (persistedCount != values.size()) {
+            return false;
+        }
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null || !Objects.deepEquals(value, persistedValues.get(entry.getKey()))) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private String getCollectionParentConfigName(@NotNull String configName) {
-        return StringUtils.defaultString(
-                configurationPersistenceStrategy.getCollectionParentConfigName(configName, null), configName);
+    private void pushCollectionItemTasks(
+            Deque<WriteTask> tasks, String collectionParentConfigName, String itemName, ConfigurationDataParts parts) {
+        if (parts.hasNested()) {
+            String itemConfigName =
+                    configNameMapping.getCollectionItemConfigName(collectionParentConfigName + "/" + itemName);
+            pushNestedTasks(tasks, itemConfigName + "/", parts);
+        }
     }
 
-    private String getCollectionItemConfigName(@NotNull String configName) {
-        return StringUtils.defaultString(
-                configurationPersistenceStrategy.getCollectionItemConfigName(configName, null), configName);
+    /**
+     * Pushes tasks for nested configurations and nested configuration collections in reverse order,
+     * so they are processed in the order of the parts (nested configurations first).
+     */
+    private static void pushNestedTasks(Deque<WriteTask> tasks, String configNamePrefix, ConfigurationDataParts parts) {
+        List<Map.Entry<String, Collection<Map<String, Object>>>> collections = parts.getCollections();
+        for (int i = collections.size() - 1; i >= 0; i--) {
+            Map.Entry<String, Collection<Map<String, Object>>> nestedCollection = collections.get(i);
+            tasks.push(new WriteTask(configNamePrefix + nestedCollection.getKey(), null, nestedCollection.getValue()));
+        }
+        List<Map.Entry<String, Map<String, Object>>> maps = parts.getMaps();
+        for (int i = maps.size() - 1; i >= 0; i--) {
+            Map.Entry<String, Map<String, Object>> nestedMap = maps.get(i);
+            tasks.push(new WriteTask(configNamePrefix + nestedMap.getKey(), nestedMap.getValue(), null));
+        }
     }
 
-    private String getNestedConfigName(@NotNull String configName, @NotNull String key) {
-        return getConfigName(configName) + "/" + key;
-    }
+    /**
+     * Pending write of a configuration or configuration collection.
+     */
+    private static final class WriteTask {
 
-    private String getNestedCollectionItemConfigName(
-            @NotNull String configName, @NotNull String itemName, @NotNull String key) {
-        return getCollectionItemConfigName(getCollectionParentConfigName(configName) + "/" + itemName) + "/" + key;
+        private final String configName;
+        private final Map<String, Object> values;
+        private final Collection<Map<String, Object>> collectionValues;
+
+        WriteTask(
+                String configName,
+                @Nullable Map<String, Object> values,
+                @Nullable Collection<Map<String, Object>> collectionValues) {
+            this.configName = configName;
+            this.values = values;
+            this.collectionValues = collectionValues;
+        }
     }
 }
@@ -0,0 +1,500 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Exports a resource subtree, e.g. the configuration resources below <code>/conf</code>, to a compact binary file,
+ * and restores it with a memory-mapped read. Restoring creates the resources directly with a single commit,
+ * without going through the configuration persistence strategies.
+ * <p>
+ * The file starts with a header, followed by one record per resource in depth-first order. Each record contains
+ * the resource name (the full path for the root resource), the properties and the number of child records.
+ * Resource and property names are written once and referenced by index afterwards.
+ * </p>
+ * <p>
+ * Properties with the <code>jcr:</code> namespace are maintained by the repository and are not exported, except
+ * <code>jcr:primaryType</code> which is passed to the resource creation on restore.
+ * </p>
+ */
+final class ConfigurationSnapshot {
+
+    private static final int MAGIC = 0x43434653; // "CCFS"
+    private static final int VERSION = 1;
+
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BOOLEAN = 2;
+    private static final byte TYPE_INTEGER = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_FLOAT = 6;
+    private static final byte TYPE_BIG_DECIMAL = 7;
+    private static final byte TYPE_CALENDAR = 8;
+    private static final byte ARRAY_FLAG = (byte) 0x80;
+    private static final byte PRIMITIVE_FLAG = 0x40;
+
+    private static final String JCR_NAMESPACE_PREFIX = "jcr:";
+    private static final String JCR_PRIMARY_TYPE = "jcr:primaryType";
+
+    private ConfigurationSnapshot() {
+        // static methods only
+    }
+
+    /**
+     * Exports the resource at the given path and all its descendants.
+     * @param resourceResolver Resource resolver
+     * @param path Root path of the subtree
+     * @param file Snapshot file, is overwritten if it exists
+     * @throws IOException if writing the file fails
+     * @throws IllegalArgumentException if no resource exists at the path, or a property type is not supported
+     */
+    static void export(@NotNull ResourceResolver resourceResolver, @NotNull String path, @NotNull Path file)
+            throws IOException {
+        try (OutputStream os = Files.newOutputStream(file)) {
+            export(resourceResolver, path, os);
+        }
+    }
+
+    /**
+     * Exports the resource at the given path and all its descendants to a byte array.
+     * @param resourceResolver Resource resolver
+     * @param path Root path of the subtree
+     * @return Snapshot data
+     * @throws IllegalArgumentException if no resource exists at the path, or a property type is not supported
+     */
+    static byte @NotNull [] export(@NotNull ResourceResolver resourceResolver, @NotNull String path) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try {
+            export(resourceResolver, path, bos);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bos.toByteArray();
+    }
+
+    private static void export(ResourceResolver resourceResolver, String path, OutputStream os) throws IOException {
+        Resource root = resourceResolver.getResource(path);
+        if (root == null) {
+            throw new IllegalArgumentException("No resource found at " + path);
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        Map<String, Integer> names = new HashMap<>();
+        Deque<Resource> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Resource resource = stack.pop();
+            writeName(out, names, resource == root ? resource.getPath() : resource.getName());
+            writeProperties(out, names, resource);
+            List<Resource> children = getChildren(resource);
+            out.writeInt(children.size());
+            // push in reverse order, so children are written in their original order
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Restores a subtree from a snapshot file. An existing resource at the root path of the snapshot is replaced.
+     * All changes are committed at once.
+     * @param resourceResolver Resource resolver
+     * @param file Snapshot file
+     * @return Root path of the restored subtree
+     * @throws IOException if reading the file fails or the file is not a valid snapshot
+     */
+    static @NotNull String restore(@NotNull ResourceResolver resourceResolver, @NotNull Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return restore(resourceResolver, buffer, file.toString());
+    }
+
+    /**
+     * Restores a subtree from snapshot data. An existing resource at the root path of the snapshot is replaced.
+     * All changes are committed at once.
+     * @param resourceResolver Resource resolver
+     * @param snapshot Snapshot data
+     * @return Root path of the restored subtree
+     * @throws IOException if committing fails or the data is not a valid snapshot
+     */
+    static @NotNull String restore(@NotNull ResourceResolver resourceResolver, byte @NotNull [] snapshot)
+            throws IOException {
+        return restore(resourceResolver, ByteBuffer.wrap(snapshot), "byte array");
+    }
+
+    private static String restore(ResourceResolver resourceResolver, ByteBuffer buffer, String source)
+            throws IOException {
+        try {
+            int magic = buffer.getInt();
+            int version = buffer.getInt();
+            if (magic != MAGIC || version != VERSION) {
+                throw new IOException("Not a configuration snapshot: " + source);
+            }
+            List<String> names = new ArrayList<>();
+            String rootPath = readName(buffer, names);
+            Resource parent = prepareParent(resourceResolver, rootPath);
+
+            // each frame is a resource with the number of child records still to be read
+            Deque<Resource> parents = new ArrayDeque<>();
+            Deque<int[]> remainingChildren = new ArrayDeque<>();
+            String name = ResourceUtil.getName(rootPath);
+            while (true) {
+                Resource resource;
+                if (parent == null) {
+                    resource = restoreRoot(resourceResolver, readProperties(buffer, names));
+                } else {
+                    resource = resourceResolver.create(parent, name, readProperties(buffer, names));
+                }
+                int childCount = buffer.getInt();
+                if (childCount > 0) {
+                    parents.push(resource);
+                    remainingChildren.push(new int[] {childCount});
+                }
+                while (!remainingChildren.isEmpty() && remainingChildren.peek()[0] == 0) {
+                    parents.pop();
+                    remainingChildren.pop();
+                }
+                if (parents.isEmpty()) {
+                    break;
+                }
+                remainingChildren.peek()[0]--;
+                parent = parents.peek();
+                name = readName(buffer, names);
+            }
+            resourceResolver.commit();
+            return rootPath;
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new IOException("Invalid configuration snapshot: " + source, ex);
+        }
+    }
+
+    /**
+     * Removes the existing subtree at the root path and returns the parent to create the restored root resource in.
+     * @return Parent resource, or null if the snapshot root is the repository root, which is kept and only its
+     *     children are replaced
+     */
+    private static Resource prepareParent(ResourceResolver resourceResolver, String rootPath)
+            throws PersistenceException {
+        Resource existing = resourceResolver.getResource(rootPath);
+        String parentPath = ResourceUtil.getParent(rootPath);
+        if (parentPath == null) {
+            if (existing == null || !"/".equals(existing.getPath())) {
+                throw new IllegalArgumentException("Invalid root path: " + rootPath);
+            }
+            for (Resource child : getChildren(existing)) {
+                resourceResolver.delete(child);
+            }
+            return null;
+        }
+        if (existing != null) {
+            resourceResolver.delete(existing);
+        }
+        return ResourceUtil.getOrCreateResource(resourceResolver, parentPath, (String) null, null, false);
+    }
+
+    /**
+     * @return Child resources, without the repository-maintained <code>jcr:</code> children of the repository root
+     */
+    private static List<Resource> getChildren(Resource resource) {
+        boolean repositoryRoot = "/".equals(resource.getPath());
+        List<Resource> children = new ArrayList<>();
+        for (Iterator<Resource> it = resource.listChildren(); it.hasNext(); ) {
+            Resource child = it.next();
+            if (!repositoryRoot || !child.getName().startsWith(JCR_NAMESPACE_PREFIX)) {
+                children.add(child);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Applies the restored properties to the repository root, which cannot be recreated.
+     */
+    private static Resource restoreRoot(ResourceResolver resourceResolver, Map<String, Object> properties) {
+        Resource root = resourceResolver.getResource("/");
+        properties.remove(JCR_PRIMARY_TYPE);
+        if (!properties.isEmpty()) {
+            ModifiableValueMap rootProperties = root.adaptTo(ModifiableValueMap.class);
+            if (rootProperties == null) {
+                throw new IllegalArgumentException("Unable to restore properties of root resource.");
+            }
+            rootProperties.putAll(properties);
+        }
+        return root;
+    }
+
+    private static void writeProperties(DataOutputStream out, Map<String, Integer> names, Resource resource)
+            throws IOException {
+        List<Map.Entry<String, Object>> properties = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : resource.getValueMap().entrySet()) {
+            if (!entry.getKey().startsWith(JCR_NAMESPACE_PREFIX) || JCR_PRIMARY_TYPE.equals(entry.getKey())) {
+                properties.add(entry);
+            }
+        }
+        out.writeInt(properties.size());
+        for (Map.Entry<String, Object> entry : properties) {
+            writeName(out, names, entry.getKey());
+            writeValue(out, entry.getValue(), resource.getPath() + "/" + entry.getKey());
+        }
+    }
+
+    private static Map<String, Object> readProperties(ByteBuffer buffer, List<String> names) {
+        int count = buffer.getInt();
+        Map<String, Object> properties = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String name = readName(buffer, names);
+            properties.put(name, readValue(buffer));
+        }
+        return properties;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value, String propertyPath) throws IOException {
+        if (value != null && value.getClass().isArray()) {
+            Class<?> componentType = value.getClass().getComponentType();
+            int length = Array.getLength(value);
+            byte type = getType(componentType, propertyPath);
+            out.writeByte(type | ARRAY_FLAG | (componentType.isPrimitive() ? PRIMITIVE_FLAG : 0));
+            out.writeInt(length);
+            for (int i = 0; i < length; i++) {
+                writeScalar(out, type, Array.get(value, i));
+            }
+        } else {
+            byte type = getType(value == null ? null : value.getClass(), propertyPath);
+            out.writeByte(type);
+            writeScalar(out, type, value);
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+        byte type = buffer.get();
+        if ((type & ARRAY_FLAG) == 0) {
+            return readScalar(buffer, type);
+        }
+        boolean primitive = (type & PRIMITIVE_FLAG) != 0;
+        type = (byte) (type & ~(ARRAY_FLAG | PRIMITIVE_FLAG));
+        int length = buffer.getInt();
+        Class<?> componentType = getComponentType(type);
+        if (primitive) {
+            componentType = getPrimitiveType(componentType);
+        }
+        Object array = Array.newInstance(componentType, length);
+        for (int i = 0; i < length; i++) {
+            Array.set(array, i, readScalar(buffer, type));
+        }
+        return array;
+    }
+
+    private static byte getType(Class<?> type, String propertyPath) {
+        if (type == String.class) {
+            return TYPE_STRING;
+        } else if (type == Boolean.class || type == boolean.class) {
+            return TYPE_BOOLEAN;
+        } else if (type == Integer.class || type == int.class) {
+            return TYPE_INTEGER;
+        } else if (type == Long.class || type == long.class) {
+            return TYPE_LONG;
+        } else if (type == Double.class || type == double.class) {
+            return TYPE_DOUBLE;
+        } else if (type == Float.class || type == float.class) {
+            return TYPE_FLOAT;
+        } else if (type == BigDecimal.class) {
+            return TYPE_BIG_DECIMAL;
+        } else if (type != null && Calendar.class.isAssignableFrom(type)) {
+            return TYPE_CALENDAR;
+        }
+        throw new IllegalArgumentException("Unsupported property type " + (type == null ? null : type.getName())
+                + " for snapshot: " + propertyPath);
+    }
+
+    private static Class<?> getComponentType(byte type) {
+        switch (type) {
+            case TYPE_STRING:
+                return String.class;
+            case TYPE_BOOLEAN:
+                return Boolean.class;
+            case TYPE_INTEGER:
+                return Integer.class;
+            case TYPE_LONG:
+                return Long.class;
+            case TYPE_DOUBLE:
+                return Double.class;
+            case TYPE_FLOAT:
+                return Float.class;
+            case TYPE_BIG_DECIMAL:
+                return BigDecimal.class;
+            case TYPE_CALENDAR:
+                return Calendar.class;
+            default:
+                throw new IllegalArgumentException("Invalid property type: " + type);
+        }
+    }
+
+    private static Class<?> getPrimitiveType(Class<?> type) {
+        if (type == Boolean.class) {
+            return boolean.class;
+        } else if (type == Integer.class) {
+            return int.class;
+        } else if (type == Long.class) {
+            return long.class;
+        } else if (type == Double.class) {
+            return double.class;
+        } else if (type == Float.class) {
+            return float.class;
+        }
+        throw new IllegalArgumentException("No primitive type for " + type.getName());
+    }
+
+    private static void writeScalar(DataOutputStream out, byte type, Object value) throws IOException {
+        switch (type) {
+            case TYPE_STRING:
+                writeString(out, (String) value);
+                break;
+            case TYPE_BOOLEAN:
+                out.writeBoolean((Boolean) value);
+                break;
+            case TYPE_INTEGER:
+                out.writeInt((Integer) value);
+                break;
+            case TYPE_LONG:
+                out.writeLong((Long) value);
+                break;
+            case TYPE_DOUBLE:
+                out.writeDouble((Double) value);
+                break;
+            case TYPE_FLOAT:
+                out.writeFloat((Float) value);
+                break;
+            case TYPE_BIG_DECIMAL:
+                writeString(out, value.toString());
+                break;
+            default:
+                Calendar calendar = (Calendar) value;
+                out.writeLong(calendar.getTimeInMillis());
+                writeString(out, calendar.getTimeZone().getID());
+                break;
+        }
+    }
+
+    private static Object readScalar(ByteBuffer buffer, byte type) {
+        switch (type) {
+            case TYPE_STRING:
+                return readString(buffer);
+            case TYPE_BOOLEAN:
+                return buffer.get() != 0;
+            case TYPE_INTEGER:
+                return buffer.getInt();
+            case TYPE_LONG:
+                return buffer.getLong();
+            case TYPE_DOUBLE:
+                return buffer.getDouble();
+            case TYPE_FLOAT:
+                return buffer.getFloat();
+            case TYPE_BIG_DECIMAL:
+                return new BigDecimal(readString(buffer));
+            case TYPE_CALENDAR:
+                long timeInMillis = buffer.getLong();
+                Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone(readString(buffer)));
+                calendar.setTimeInMillis(timeInMillis);
+                return calendar;
+            default:
+                throw new IllegalArgumentException("Invalid property type: " + type);
+        }
+    }
+
+    /**
+     * Writes the index of a name written before, or -1 followed by the name itself.
+     */
+    private static void writeName(DataOutputStream out, Map<String, Integer> names, String name) throws IOException {
+        Integer index = names.get(name);
+        if (index != null) {
+            out.writeInt(index);
+        } else {
+            names.put(name, names.size());
+            out.writeInt(-1);
+            writeString(out, name);
+        }
+    }
+
+    private static String readName(ByteBuffer buffer, List<String> names) {
+        int index = buffer.getInt();
+        if (index >= 0) {
+            return names.get(index);
+        }
+        String name = readString(buffer);
+        names.add(name);
+        return name;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(
+                    buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        } else {
+            ByteBuffer slice = buffer.slice();
+            slice.limit(length);
+            value = StandardCharsets.UTF_8.decode(slice).toString();
+        }
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
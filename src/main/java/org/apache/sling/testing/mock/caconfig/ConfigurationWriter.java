@@ -0,0 +1,381 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.caconfig.management.ConfigurationManager;
+import org.apache.sling.testing.mock.osgi.MapUtil;
+import org.apache.sling.testing.mock.sling.context.SlingContextImpl;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Writes configurations for a context, like the static write methods of {@link MockContextAwareConfig}.
+ * The services are looked up only once and reused for all writes with the same writer, so it is more efficient
+ * when writing many configurations. The config name mappings of the persistence strategies are cached per context.
+ * The context resources are resolved on the first write for each context path and kept for further writes.
+ * Changes of the context resources are not detected: call {@link #invalidate(String)} or {@link #invalidate()}
+ * after a context resource was replaced or its <code>sling:configRef</code> changed, e.g. by reverting the resource
+ * resolver or restoring a baseline or snapshot containing the context resources.
+ * Get an instance via {@link MockContextAwareConfig#writer(SlingContextImpl)}.
+ */
+@ProviderType
+public final class ConfigurationWriter {
+
+    private final ConfigurationManager configManager;
+    private final ConfigurationNameMappingCache configNameMapping;
+    private final ResourceResolver resourceResolver;
+    private final boolean incremental;
+    private final Map<String, ConfigurationPersistHelper> helpers = new HashMap<>();
+
+    /**
+     * @param context Sling context
+     * @param resourceResolver Resource resolver used for resolving the context resources and persisting
+     */
+    ConfigurationWriter(@NotNull SlingContextImpl context, @NotNull ResourceResolver resourceResolver) {
+        this(context, resourceResolver, false);
+    }
+
+    /**
+     * @param context Sling context
+     * @param resourceResolver Resource resolver used for resolving the context resources and persisting
+     * @param incremental If true, only configurations and collection items with changed values are written
+     */
+    ConfigurationWriter(
+            @NotNull SlingContextImpl context, @NotNull ResourceResolver resourceResolver, boolean incremental) {
+        this.configManager = ConfigurationPersistHelper.getConfigurationManager(context);
+        this.configNameMapping = ConfigurationPersistHelper.getConfigNameMapping(context);
+        this.resourceResolver = resourceResolver;
+        this.incremental = incremental;
+    }
+
+    /**
+     * Writes configurations for multiple context paths. All context resources are resolved first, so nothing is
+     * written if any of them does not exist.
+     * @param configurations Map with context path as key, and a map of configurations as value. The configuration
+     *     map has the config name as key (the class name for configuration annotation classes without explicit name),
+     *     and either a {@link Map} with configuration values or a {@link Collection} of such maps for configuration
+     *     collections as value.
+     * @return this
+     */
+    public @NotNull ConfigurationWriter writeConfigurations(
+            @NotNull Map<String, ? extends Map<String, ?>> configurations) {
+        List<ConfigurationPersistHelper> contextHelpers = new ArrayList<>(configurations.size());
+        for (String contextPath : configurations.keySet()) {
+            contextHelpers.add(getHelper(contextPath));
+        }
+        int index = 0;
+        for (Map<String, ?> contextConfigurations : configurations.values()) {
+            ConfigurationPersistHelper helper = contextHelpers.get(index++);
+            for (Map.Entry<String, ?> entry : contextConfigurations.entrySet()) {
+                writeConfiguration(helper, entry.getKey(), entry.getValue());
+            }
+        }
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeConfiguration(ConfigurationPersistHelper helper, String configName, Object value) {
+        if (value instanceof Map) {
+            helper.writeConfiguration(configName, (Map<String, Object>) value);
+        } else if (value instanceof Collection) {
+            helper.writeConfigurationCollection(configName, (Collection<Map<String, Object>>) value);
+        } else {
+            throw new IllegalArgumentException("Expected map or collection of maps for configuration " + configName
+                    + ", got: " + (value == null ? null : value.getClass().getName()));
+        }
+    }
+
+    /**
+     * Writes configuration parameters using the primary configured persistence provider.
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationWriter writeConfiguration(
+            @NotNull String contextPath, @NotNull Class<?> configClass, @NotNull Map<String, Object> values) {
+        return writeConfiguration(contextPath, MockContextAwareConfig.getConfigurationName(configClass), values);
+    }
+
+    /**
+     * Writes configuration parameters using the primary configured persistence provider.
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationWriter writeConfiguration(
+            @NotNull String contextPath, @NotNull String configName, @NotNull Map<String, Object> values) {
+        getHelper(contextPath).writeConfiguration(configName, values);
+        return this;
+    }
+
+    /**
+     * Writes configuration parameters using the primary configured persistence provider.
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationWriter writeConfiguration(
+            @NotNull String contextPath, @NotNull Class<?> configClass, @NotNull Object @NotNull ... values) {
+        return writeConfiguration(contextPath, configClass, MapUtil.toMap(values));
+    }
+
+    /**
+     * Writes configuration parameters using the primary configured persistence provider.
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationWriter writeConfiguration(
+            @NotNull String contextPath, @NotNull String configName, @NotNull Object @NotNull ... values) {
+        return writeConfiguration(contextPath, configName, MapUtil.toMap(values));
+    }
+
+    /**
+     * Writes a collection of configuration parameters using the primary configured persistence provider.
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationWriter writeConfigurationCollection(
+            @NotNull String contextPath,
+            @NotNull Class<?> configClass,
+            @NotNull Collection<@NotNull Map<String, Object>> values) {
+        return writeConfigurationCollection(
+                contextPath, MockContextAwareConfig.getConfigurationName(configClass), values);
+    }
+
+    /**
+     * Writes a collection of configuration parameters using the primary configured persistence provider.
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationWriter writeConfigurationCollection(
+            @NotNull String contextPath,
+            @NotNull String configName,
+            @NotNull Collection<@NotNull Map<String, Object>> values) {
+        getHelper(contextPath).writeConfigurationCollection(configName, values);
+        return this;
+    }
+
+    /**
+     * Writes a large collection of configuration parameters using the primary configured persistence provider,
+     * without copying the items. See {@link MockContextAwareConfig#writeConfigurationCollection(SlingContextImpl,
+     * String, String, Stream)}.
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param values Configuration values, the stream is consumed once and closed
+     * @return this
+     */
+    public @NotNull ConfigurationWriter writeConfigurationCollection(
+            @NotNull String contextPath, @NotNull Class<?> configClass, @NotNull Stream<Map<String, Object>> values) {
+        return writeConfigurationCollection(
+                contextPath, MockContextAwareConfig.getConfigurationName(configClass), values);
+    }
+
+    /**
+     * Writes a large collection of configuration parameters using the primary configured persistence provider,
+     * without copying the items. See {@link MockContextAwareConfig#writeConfigurationCollection(SlingContextImpl,
+     * String, String, Stream)}.
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param values Configuration values, the stream is consumed once and closed
+     * @return this
+     */
+    public @NotNull ConfigurationWriter writeConfigurationCollection(
+            @NotNull String contextPath, @NotNull String configName, @NotNull Stream<Map<String, Object>> values) {
+        getHelper(contextPath).writeConfigurationCollection(configName, values);
+        return this;
+    }
+
+    /**
+     * Appends items to a configuration collection using the primary configured persistence provider.
+     * The existing items are not rewritten.
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param values Configuration values of the new items
+     * @return this
+     */
+    public @NotNull ConfigurationWriter appendConfigurationCollectionItems(
+            @NotNull String contextPath,
+            @NotNull Class<?> configClass,
+            @NotNull Collection<@NotNull Map<String, Object>> values) {
+        return appendConfigurationCollectionItems(
+                contextPath, MockContextAwareConfig.getConfigurationName(configClass), values);
+    }
+
+    /**
+     * Appends items to a configuration collection using the primary configured persistence provider.
+     * The existing items are not rewritten.
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param values Configuration values of the new items
+     * @return this
+     */
+    public @NotNull ConfigurationWriter appendConfigurationCollectionItems(
+            @NotNull String contextPath,
+            @NotNull String configName,
+            @NotNull Collection<@NotNull Map<String, Object>> values) {
+        getHelper(contextPath).appendConfigurationCollectionItems(configName, values);
+        return this;
+    }
+
+    /**
+     * Replaces the values of a single configuration collection item using the primary configured persistence
+     * provider. The other items are not rewritten.
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param itemName Collection item name
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationWriter updateConfigurationCollectionItem(
+            @NotNull String contextPath,
+            @NotNull Class<?> configClass,
+            @NotNull String itemName,
+            @NotNull Map<String, Object> values) {
+        return updateConfigurationCollectionItem(
+                contextPath, MockContextAwareConfig.getConfigurationName(configClass), itemName, values);
+    }
+
+    /**
+     * Replaces the values of a single configuration collection item using the primary configured persistence
+     * provider. The other items are not rewritten.
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param itemName Collection item name
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationWriter updateConfigurationCollectionItem(
+            @NotNull String contextPath,
+            @NotNull String configName,
+            @NotNull String itemName,
+            @NotNull Map<String, Object> values) {
+        getHelper(contextPath).updateConfigurationCollectionItem(configName, itemName, values);
+        return this;
+    }
+
+    /**
+     * Replaces the values of a single configuration collection item using the primary configured persistence
+     * provider. The other items are not rewritten.
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param index Position of the item in the collection
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationWriter updateConfigurationCollectionItem(
+            @NotNull String contextPath,
+            @NotNull Class<?> configClass,
+            int index,
+            @NotNull Map<String, Object> values) {
+        return updateConfigurationCollectionItem(
+                contextPath, MockContextAwareConfig.getConfigurationName(configClass), index, values);
+    }
+
+    /**
+     * Replaces the values of a single configuration collection item using the primary configured persistence
+     * provider. The other items are not rewritten.
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param index Position of the item in the collection
+     * @param values Configuration values
+     * @return this
+     */
+    public @NotNull ConfigurationWriter updateConfigurationCollectionItem(
+            @NotNull String contextPath, @NotNull String configName, int index, @NotNull Map<String, Object> values) {
+        getHelper(contextPath).updateConfigurationCollectionItem(configName, index, values);
+        return this;
+    }
+
+    /**
+     * Removes items from a configuration collection using the primary configured persistence provider.
+     * The other items are not rewritten.
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param itemNames Collection item names
+     * @return this
+     */
+    public @NotNull ConfigurationWriter removeConfigurationCollectionItems(
+            @NotNull String contextPath, @NotNull Class<?> configClass, @NotNull String @NotNull ... itemNames) {
+        return removeConfigurationCollectionItems(
+                contextPath, MockContextAwareConfig.getConfigurationName(configClass), itemNames);
+    }
+
+    /**
+     * Removes items from a configuration collection using the primary configured persistence provider.
+     * The other items are not rewritten.
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param itemNames Collection item names
+     * @return this
+     */
+    public @NotNull ConfigurationWriter removeConfigurationCollectionItems(
+            @NotNull String contextPath, @NotNull String configName, @NotNull String @NotNull ... itemNames) {
+        getHelper(contextPath).removeConfigurationCollectionItems(configName, Arrays.asList(itemNames));
+        return this;
+    }
+
+    /**
+     * Discards the context resource kept for the given context path and all context paths below it, they are
+     * resolved again on the next write.
+     * @param contextPath Context path
+     * @return this
+     */
+    public @NotNull ConfigurationWriter invalidate(@NotNull String contextPath) {
+        String pathPrefix = "/".equals(contextPath) ? contextPath : contextPath + "/";
+        helpers.keySet().removeIf(path -> path.equals(contextPath) || path.startsWith(pathPrefix));
+        return this;
+    }
+
+    /**
+     * Discards all context resources kept by this writer, they are resolved again on the next write.
+     * @return this
+     */
+    public @NotNull ConfigurationWriter invalidate() {
+        helpers.clear();
+        return this;
+    }
+
+    private ConfigurationPersistHelper getHelper(String contextPath) {
+        return helpers.computeIfAbsent(
+                contextPath,
+                path -> new ConfigurationPersistHelper(
+                        configManager,
+                        configNameMapping,
+                        ConfigurationPersistHelper.getContextResource(resourceResolver, path),
+                        incremental));
+    }
+}
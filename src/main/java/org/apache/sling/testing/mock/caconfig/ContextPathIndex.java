@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.apache.sling.caconfig.resource.impl.def.DefaultContextPathStrategy;
+import org.apache.sling.caconfig.resource.spi.ContextPathStrategy;
+import org.apache.sling.caconfig.resource.spi.ContextResource;
+import org.apache.sling.testing.mock.sling.context.SlingContextImpl;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+/**
+ * Context path strategy used by {@link ContextPlugins#CACONFIG_CONTEXT_PATH_INDEX} instead of the
+ * {@link DefaultContextPathStrategy}. It keeps the known context roots (resources with a <code>sling:configRef</code>
+ * property) in a sorted map, and answers lookups by a prefix search in this map, innermost root first.
+ * <p>
+ * Ancestors of a looked up resource are read from the resource tree only up to the first path visited before, so
+ * new content is picked up without reading the whole ancestor chain again. The resource passed to the lookup and
+ * the matching roots are always checked, so changed or removed roots are detected. Committed changes reported to
+ * the {@link ResourceChangeListener} discard the affected entries. Only a <code>sling:configRef</code> property
+ * added later to another already visited resource without commit requires a {@link #refresh(String)}.
+ * </p>
+ * <p>
+ * The <code>configRefResourceNames</code> and <code>configRefPropertyNames</code> settings of the default strategy
+ * are not supported, the plugin refuses to replace the default strategy if they are configured.
+ * </p>
+ */
+final class ContextPathIndex implements ContextPathStrategy, ResourceChangeListener {
+
+    static final String DEFAULT_STRATEGY_PID = DefaultContextPathStrategy.class.getName();
+    static final String PROPERTY_CONFIG_REF = "sling:configRef";
+    private static final String[] UNSUPPORTED_PROPERTIES = {"configRefResourceNames", "configRefPropertyNames"};
+
+    // known context roots with their configRef
+    private final NavigableMap<String, String> roots = new TreeMap<>();
+    // paths read from the resource tree, including all visited ancestors
+    private final NavigableSet<String> visitedPaths = new TreeSet<>();
+
+    /**
+     * Disable the default context path strategy in the given context. Has to be called before the default
+     * implementation services are registered. Other settings of the default strategy are kept.
+     * @param context Sling context
+     * @throws IOException I/O exception
+     * @throws IllegalStateException if settings of the default strategy not supported by the index are configured
+     */
+    static void disableDefaultStrategy(@NotNull SlingContextImpl context) throws IOException {
+        ConfigurationAdmin configAdmin = context.getService(ConfigurationAdmin.class);
+        if (configAdmin == null) {
+            throw new IllegalStateException("No ConfigurationAdmin service registered.");
+        }
+        Configuration configuration = configAdmin.getConfiguration(DEFAULT_STRATEGY_PID);
+        Dictionary<String, Object> properties = configuration.getProperties();
+        if (properties == null) {
+            properties = new Hashtable<>();
+        }
+        for (String property : UNSUPPORTED_PROPERTIES) {
+            if (isSet(properties.get(property))) {
+                throw new IllegalStateException("Context path index does not support property '" + property + "' of "
+                        + DEFAULT_STRATEGY_PID + ", use the default context path strategy instead.");
+            }
+        }
+        properties.put("enabled", false);
+        configuration.update(properties);
+    }
+
+    private static boolean isSet(@Nullable Object value) {
+        if (value instanceof String[]) {
+            for (String item : (String[]) value) {
+                if (StringUtils.isNotBlank(item)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return value instanceof String && StringUtils.isNotBlank((String) value);
+    }
+
+    /**
+     * Register a new index in the given context.
+     * @param context Sling context
+     */
+    static void register(@NotNull SlingContextImpl context) {
+        ContextPathIndex index = new ContextPathIndex();
+        context.registerService(ContextPathIndex.class, index);
+        context.registerService(ContextPathStrategy.class, index);
+        context.registerService(
+                ResourceChangeListener.class,
+                index,
+                ResourceChangeListener.PATHS,
+                new String[] {"/"},
+                ResourceChangeListener.PROPERTY_NAMES_HINT,
+                new String[] {PROPERTY_CONFIG_REF});
+    }
+
+    /**
+     * Discards all entries of the index, if registered in the given context.
+     * @param context Sling context
+     */
+    static void refreshIfPresent(@NotNull SlingContextImpl context) {
+        ContextPathIndex index = context.getService(ContextPathIndex.class);
+        if (index != null) {
+            index.refresh();
+        }
+    }
+
+    @Override
+    public synchronized @NotNull Iterator<ContextResource> findContextResources(@NotNull Resource resource) {
+        ResourceResolver resourceResolver = resource.getResourceResolver();
+        String path = resource.getPath();
+        visit(path, getConfigRef(resource));
+
+        // read ancestors up to the first one visited before, the paths above it are visited as well
+        String ancestorPath = ResourceUtil.getParent(path);
+        while (ancestorPath != null && !visitedPaths.contains(ancestorPath)) {
+            Resource ancestor = resourceResolver.getResource(ancestorPath);
+            if (ancestor == null) {
+                break;
+            }
+            visit(ancestorPath, getConfigRef(ancestor));
+            ancestorPath = ResourceUtil.getParent(ancestorPath);
+        }
+
+        List<ContextResource> result = new ArrayList<>();
+        for (String rootPath : getRootPaths(path)) {
+            Resource root = rootPath.equals(path) ? resource : resourceResolver.getResource(rootPath);
+            String configRef = root != null ? getConfigRef(root) : null;
+            if (configRef != null) {
+                roots.put(rootPath, configRef);
+                result.add(new ContextResource(root, configRef));
+            } else if (root != null) {
+                roots.remove(rootPath);
+            } else {
+                refresh(rootPath);
+            }
+        }
+        return result.iterator();
+    }
+
+    /**
+     * Finds the known roots on the given path with a prefix search in the sorted roots.
+     * @return Root paths, innermost first
+     */
+    private List<String> getRootPaths(String path) {
+        List<String> result = new ArrayList<>();
+        String current = path;
+        while (current != null) {
+            String candidate = roots.floorKey(current);
+            if (candidate == null) {
+                break;
+            }
+            if (isSameOrDescendant(current, candidate)) {
+                result.add(candidate);
+                current = ResourceUtil.getParent(candidate);
+            } else {
+                // no root between the candidate and the current path, continue with the deepest ancestor
+                // that shares the common prefix with the candidate
+                int commonLength = StringUtils.indexOfDifference(current, candidate);
+                do {
+                    current = ResourceUtil.getParent(current);
+                } while (current != null && current.length() > commonLength);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void onChange(@NotNull List<ResourceChange> changes) {
+        for (ResourceChange change : changes) {
+            refresh(change.getPath());
+        }
+    }
+
+    /**
+     * Discard the index entries for the given path and all paths below, they are read again on next lookup.
+     * @param path Resource path
+     */
+    synchronized void refresh(@NotNull String path) {
+        String normalizedPath = "/".equals(path) ? path : StringUtils.removeEnd(path, "/");
+        roots.remove(normalizedPath);
+        visitedPaths.remove(normalizedPath);
+        String prefix = "/".equals(normalizedPath) ? normalizedPath : normalizedPath + "/";
+        roots.subMap(prefix, prefix + Character.MAX_VALUE).clear();
+        visitedPaths.subSet(prefix, prefix + Character.MAX_VALUE).clear();
+    }
+
+    /**
+     * Discard all index entries.
+     */
+    synchronized void refresh() {
+        roots.clear();
+        visitedPaths.clear();
+    }
+
+    private void visit(String path, @Nullable String configRef) {
+        visitedPaths.add(path);
+        if (configRef != null) {
+            roots.put(path, configRef);
+        } else {
+            roots.remove(path);
+        }
+    }
+
+    private static boolean isSameOrDescendant(String path, String ancestorPath) {
+        return path.equals(ancestorPath)
+                || "/".equals(ancestorPath)
+                || (path.startsWith(ancestorPath) && path.charAt(ancestorPath.length()) == '/');
+    }
+
+    private static @Nullable String getConfigRef(@NotNull Resource resource) {
+        String configRef = resource.getValueMap().get(PROPERTY_CONFIG_REF, String.class);
+        return StringUtils.isNotBlank(configRef) ? configRef : null;
+    }
+}
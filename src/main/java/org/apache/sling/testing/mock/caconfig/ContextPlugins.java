@@ -18,15 +18,7 @@
  */
 package org.apache.sling.testing.mock.caconfig;
 
-import org.apache.sling.caconfig.impl.ConfigurationBuilderAdapterFactory;
-import org.apache.sling.caconfig.impl.ConfigurationResolverImpl;
-import org.apache.sling.caconfig.impl.def.DefaultConfigurationPersistenceStrategy;
-import org.apache.sling.caconfig.impl.metadata.AnnotationClassConfigurationMetadataProvider;
-import org.apache.sling.caconfig.management.impl.ConfigurationManagerImpl;
-import org.apache.sling.caconfig.management.impl.ContextPathStrategyMultiplexerImpl;
-import org.apache.sling.caconfig.resource.impl.ConfigurationResourceResolverImpl;
-import org.apache.sling.caconfig.resource.impl.def.DefaultConfigurationResourceResolvingStrategy;
-import org.apache.sling.caconfig.resource.impl.def.DefaultContextPathStrategy;
+import org.apache.sling.testing.mock.caconfig.ServiceGraphTemplate.Phase;
 import org.apache.sling.testing.mock.osgi.context.AbstractContextPlugin;
 import org.apache.sling.testing.mock.osgi.context.ContextPlugin;
 import org.apache.sling.testing.mock.sling.context.SlingContextImpl;
@@ -36,6 +28,7 @@ import org.osgi.annotation.versioning.ProviderType;
 /**
  * Mock context plugins.
  * The plugin supports all versions from 1.2 to the most recent versions of the Impl/SPI.
+ * The service classes to register are resolved only once per JVM, each context gets fresh service instances.
  */
 @ProviderType
 public final class ContextPlugins {
@@ -51,22 +44,28 @@ public final class ContextPlugins {
             new AbstractContextPlugin<SlingContextImpl>() {
                 @Override
                 public void beforeSetUp(@NotNull SlingContextImpl context) throws Exception {
+                    long start = SetupTimings.start();
+                    // scan MANIFEST.MF files in background while the services are registered
+                    ConfigurationMetadataUtil.startManifestScan();
                     // register models injector and it's dependencies before setup, to ensure it is present
                     // before sling models are auto-detected from classpath
                     registerConfigurationResourceResolver(context);
                     registerConfigurationResolver(context);
                     registerConfigurationManagement(context);
                     registerModelsInjector(context);
+                    SetupTimings.record("plugin:CACONFIG.beforeSetUp", start);
                 }
 
                 @Override
                 public void afterSetUp(@NotNull SlingContextImpl context) throws Exception {
+                    long start = SetupTimings.start();
                     registerConfigurationResourceResolverDefaultImpl(context);
                     registerConfigurationResolverDefaultImpl(context);
 
                     // Scan MANIFEST.MF in the classpath and automatically register all Configuration annotation classes
                     // found.
                     ConfigurationMetadataUtil.addAnnotationClassesForManifestEntries(context.bundleContext());
+                    SetupTimings.record("plugin:CACONFIG.afterSetUp", start);
                 }
             };
 
@@ -77,124 +76,116 @@ public final class ContextPlugins {
             new AbstractContextPlugin<SlingContextImpl>() {
                 @Override
                 public void afterSetUp(@NotNull SlingContextImpl context) throws Exception {
+                    long start = SetupTimings.start();
                     registerConfigurationResourceResolver(context);
                     registerConfigurationResolver(context);
                     registerConfigurationManagement(context);
                     registerModelsInjector(context);
+                    SetupTimings.record("plugin:CACONFIG_NODEF.afterSetUp", start);
                 }
             };
 
     /**
-     * Register all services for ConfigurationResourceResolver (without the default implementations).
-     * @param context Sling context
+     * Context plugin for Sling Context-Aware Configuration that registers only lightweight placeholders on setup.
+     * The real services (including the default implementations) are activated on first adaption to
+     * ConfigurationBuilder, first use of ConfigurationResolver, ConfigurationResourceResolver or
+     * ConfigurationManager, or when writing configuration via {@link MockContextAwareConfig}.
      */
-    private static void registerConfigurationResourceResolver(SlingContextImpl context) {
-
-        context.registerInjectActivateService(new ContextPathStrategyMultiplexerImpl());
-
-        if (!registerByClassName(
-                context,
-                "org.apache.sling.caconfig.resource.impl.ConfigurationResourceResolvingStrategyMultiplexerImpl")) {
-            // fallback to impl 1.2
-            registerByClassName(
-                    context,
-                    "org.apache.sling.caconfig.resource.impl.ConfigurationResourceResolvingStrategyMultiplexer");
-        }
+    public static final @NotNull ContextPlugin<? extends SlingContextImpl> CACONFIG_LAZY =
+            new AbstractContextPlugin<SlingContextImpl>() {
+                @Override
+                public void beforeSetUp(@NotNull SlingContextImpl context) throws Exception {
+                    long start = SetupTimings.start();
+                    ConfigurationMetadataUtil.startManifestScan();
+                    LazyServiceActivator.register(context);
+                    registerModelsInjector(context);
+                    SetupTimings.record("plugin:CACONFIG_LAZY.beforeSetUp", start);
+                }
+            };
 
-        context.registerInjectActivateService(new ConfigurationResourceResolverImpl());
-    }
+    /**
+     * Add-on context plugin that caches the configurations returned by ConfigurationBuilder, see
+     * {@link ConfigurationBuilderCache}. It has to be used together with {@link #CACONFIG},
+     * {@link #CACONFIG_NODEF} or {@link #CACONFIG_LAZY}.
+     */
+    public static final @NotNull ContextPlugin<? extends SlingContextImpl> CACONFIG_CACHE =
+            new AbstractContextPlugin<SlingContextImpl>() {
+                @Override
+                public void afterSetUp(@NotNull SlingContextImpl context) throws Exception {
+                    long start = SetupTimings.start();
+                    ConfigurationBuilderCache.register(context);
+                    SetupTimings.record("plugin:CACONFIG_CACHE.afterSetUp", start);
+                }
+            };
 
     /**
-     * Register default implementations for for ConfigurationResourceResolver.
-     * @param context Sling context
+     * Add-on context plugin that stores configurations in memory instead of the resource tree. It registers a
+     * configuration persistence strategy and a configuration resource resolving strategy backed by a path-indexed
+     * map with high service ranking. Configurations written via {@link MockContextAwareConfig} or the
+     * ConfigurationManager are kept in this map, configurations not found in it are still looked up in the resource
+     * tree by the default strategies. Configuration snapshots and baselines do not include the in-memory
+     * configurations. It has to be used together with {@link #CACONFIG} or {@link #CACONFIG_LAZY}.
      */
-    private static void registerConfigurationResourceResolverDefaultImpl(SlingContextImpl context) {
-        context.registerInjectActivateService(new DefaultContextPathStrategy());
-        context.registerInjectActivateService(new DefaultConfigurationResourceResolvingStrategy());
-    }
+    public static final @NotNull ContextPlugin<? extends SlingContextImpl> CACONFIG_INMEMORY =
+            new AbstractContextPlugin<SlingContextImpl>() {
+                @Override
+                public void afterSetUp(@NotNull SlingContextImpl context) throws Exception {
+                    long start = SetupTimings.start();
+                    InMemoryConfigurationStore.register(context);
+                    SetupTimings.record("plugin:CACONFIG_INMEMORY.afterSetUp", start);
+                }
+            };
 
     /**
-     * Register all services for ConfigurationResolver (without the default implementations).
-     * @param context Sling context
+     * Add-on context plugin that replaces the default context path strategy with an index of context roots, see
+     * {@link ContextPathIndex}. Lookups for deep resources below the same context roots do not read every ancestor
+     * resource again. It has to be used together with {@link #CACONFIG} or {@link #CACONFIG_LAZY}.
+     * The <code>configRefResourceNames</code> and <code>configRefPropertyNames</code> settings of the default context
+     * path strategy are not supported, setup fails if they are configured.
      */
-    private static void registerConfigurationResolver(SlingContextImpl context) {
-        registerByClassName(context, "org.apache.sling.caconfig.management.impl.ConfigurationManagementSettingsImpl");
-
-        if (!registerByClassName(
-                context, "org.apache.sling.caconfig.management.impl.ConfigurationPersistenceStrategyMultiplexerImpl")) {
-            // fallback to impl 1.2
-            registerByClassName(
-                    context, "org.apache.sling.caconfig.management.impl.ConfigurationPersistenceStrategyMultiplexer");
-        }
-
-        // only required for impl 1.3+
-        registerByClassName(context, "org.apache.sling.caconfig.impl.ConfigurationPersistenceStrategyBridge");
-
-        if (!registerByClassName(
-                context, "org.apache.sling.caconfig.impl.metadata.ConfigurationMetadataProviderMultiplexerImpl")) {
-            // fallback to impl 1.2
-            registerByClassName(
-                    context, "org.apache.sling.caconfig.impl.metadata.ConfigurationMetadataProviderMultiplexer");
-        }
-
-        if (!registerByClassName(
-                context, "org.apache.sling.caconfig.impl.ConfigurationInheritanceStrategyMultiplexerImpl")) {
-            // fallback to impl 1.2 (not existing in 1.1 or below)
-            registerByClassName(context, "org.apache.sling.caconfig.impl.ConfigurationInheritanceStrategyMultiplexer");
-        }
-
-        if (!registerByClassName(
-                context, "org.apache.sling.caconfig.impl.override.ConfigurationOverrideMultiplexerImpl")) {
-            // fallback to impl 1.2 (not existing in 1.1 or below)
-            registerByClassName(context, "org.apache.sling.caconfig.impl.override.ConfigurationOverrideManager");
-        }
-
-        context.registerInjectActivateService(new ConfigurationResolverImpl());
-        context.registerInjectActivateService(new ConfigurationBuilderAdapterFactory());
-    }
+    public static final @NotNull ContextPlugin<? extends SlingContextImpl> CACONFIG_CONTEXT_PATH_INDEX =
+            new AbstractContextPlugin<SlingContextImpl>() {
+                @Override
+                public void beforeSetUp(@NotNull SlingContextImpl context) throws Exception {
+                    ContextPathIndex.disableDefaultStrategy(context);
+                }
+
+                @Override
+                public void afterSetUp(@NotNull SlingContextImpl context) throws Exception {
+                    long start = SetupTimings.start();
+                    ContextPathIndex.register(context);
+                    SetupTimings.record("plugin:CACONFIG_CONTEXT_PATH_INDEX.afterSetUp", start);
+                }
+            };
 
     /**
-     * Register default implementations for for ConfigurationResolver.
-     * @param context Sling context
+     * @return Generation of the Sling Context-Aware Configuration Impl detected in the classpath.
      */
-    private static void registerConfigurationResolverDefaultImpl(SlingContextImpl context) {
-        context.registerInjectActivateService(new DefaultConfigurationPersistenceStrategy());
+    public static @NotNull ImplGeneration getImplGeneration() {
+        return ServiceGraphTemplate.get().getGeneration();
+    }
 
-        // only required for impl 1.2+
-        registerByClassName(context, "org.apache.sling.caconfig.impl.def.DefaultConfigurationInheritanceStrategy");
+    private static void registerConfigurationResourceResolver(SlingContextImpl context) {
+        ServiceGraphTemplate.get().register(context, Phase.RESOURCE_RESOLVER);
+    }
 
-        // required for impl 1.6+
-        registerByClassName(
-                context, "org.apache.sling.caconfig.impl.def.DefaultConfigurationInjectResourceDetectionStrategy");
+    private static void registerConfigurationResourceResolverDefaultImpl(SlingContextImpl context) {
+        ServiceGraphTemplate.get().register(context, Phase.RESOURCE_RESOLVER_DEFAULT_IMPL);
     }
 
-    private static void registerConfigurationManagement(SlingContextImpl context) {
-        context.registerInjectActivateService(new ConfigurationManagerImpl());
-        context.registerInjectActivateService(new AnnotationClassConfigurationMetadataProvider());
+    private static void registerConfigurationResolver(SlingContextImpl context) {
+        ServiceGraphTemplate.get().register(context, Phase.RESOLVER);
+    }
 
-        // required for impl 1.6
-        registerByClassName(
-                context, "org.apache.sling.caconfig.impl.ConfigurationInjectResourceDetectionStrategyMultiplexerImpl");
+    private static void registerConfigurationResolverDefaultImpl(SlingContextImpl context) {
+        ServiceGraphTemplate.get().register(context, Phase.RESOLVER_DEFAULT_IMPL);
     }
 
-    private static void registerModelsInjector(SlingContextImpl context) {
-        // required for impl 1.6
-        registerByClassName(
-                context, "org.apache.sling.models.caconfig.impl.injectors.ContextAwareConfigurationInjector");
+    private static void registerConfigurationManagement(SlingContextImpl context) {
+        ServiceGraphTemplate.get().register(context, Phase.MANAGEMENT);
     }
 
-    @SuppressWarnings("null")
-    private static boolean registerByClassName(SlingContextImpl context, String className) {
-        try {
-            Class<?> clazz = Class.forName(className);
-            context.registerInjectActivateService(clazz.newInstance());
-            return true;
-        } catch (ClassNotFoundException ex) {
-            return false;
-        } catch (InstantiationException ex) {
-            throw new RuntimeException(ex);
-        } catch (IllegalAccessException ex) {
-            throw new RuntimeException(ex);
-        }
+    private static void registerModelsInjector(SlingContextImpl context) {
+        ServiceGraphTemplate.get().register(context, Phase.MODELS_INJECTOR);
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.wrappers.ResourceResolverWrapper;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Resource resolver wrapper that ignores the commit calls of the persistence strategies, so all changes
+ * are collected in the wrapped resource resolver and can be committed at once via {@link #commitDeferred()}.
+ */
+final class DeferredCommitResourceResolver extends ResourceResolverWrapper {
+
+    private final ResourceResolver resourceResolver;
+    private int deferredCommitCount;
+
+    DeferredCommitResourceResolver(@NotNull ResourceResolver resourceResolver) {
+        super(resourceResolver);
+        this.resourceResolver = resourceResolver;
+    }
+
+    @Override
+    public void commit() {
+        // commit is deferred until commitDeferred() is called
+        deferredCommitCount++;
+    }
+
+    /**
+     * Commits all changes collected in the wrapped resource resolver.
+     * @throws PersistenceException Persistence exception
+     */
+    void commitDeferred() throws PersistenceException {
+        if (resourceResolver.hasChanges()) {
+            resourceResolver.commit();
+        }
+        deferredCommitCount = 0;
+    }
+
+    /**
+     * @return Number of commit calls deferred since the last commit.
+     */
+    int getDeferredCommitCount() {
+        return deferredCommitCount;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Generations of the Sling Context-Aware Configuration Impl bundle that differ in the set of services
+ * registered by {@link ContextPlugins}.
+ */
+public enum ImplGeneration {
+
+    /**
+     * Impl 1.2: multiplexer implementations without "Impl" suffix.
+     */
+    IMPL_1_2("org.apache.sling.caconfig.resource.impl.ConfigurationResourceResolvingStrategyMultiplexer"),
+
+    /**
+     * Impl 1.3: multiplexer implementations with "Impl" suffix and persistence strategy bridge.
+     */
+    IMPL_1_3("org.apache.sling.caconfig.resource.impl.ConfigurationResourceResolvingStrategyMultiplexerImpl"),
+
+    /**
+     * Impl 1.4 and higher: additional configuration management settings service.
+     */
+    IMPL_1_4("org.apache.sling.caconfig.management.impl.ConfigurationManagementSettingsImpl");
+
+    private final String markerClassName;
+
+    ImplGeneration(String markerClassName) {
+        this.markerClassName = markerClassName;
+    }
+
+    /**
+     * @param generation Other generation
+     * @return true if this generation is the same or newer than the given one
+     */
+    public boolean isAtLeast(@NotNull ImplGeneration generation) {
+        return compareTo(generation) >= 0;
+    }
+
+    /**
+     * Detect Impl generation by checking for the marker classes, starting with the most recent generation.
+     * @return Detected generation
+     */
+    static @NotNull ImplGeneration detect() {
+        ImplGeneration[] generations = values();
+        for (int i = generations.length - 1; i > 0; i--) {
+            if (isPresent(generations[i].markerClassName)) {
+                return generations[i];
+            }
+        }
+        return IMPL_1_2;
+    }
+
+    private static boolean isPresent(String className) {
+        try {
+            Class.forName(className);
+            return true;
+        } catch (ClassNotFoundException ex) {
+            return false;
+        }
+    }
+}
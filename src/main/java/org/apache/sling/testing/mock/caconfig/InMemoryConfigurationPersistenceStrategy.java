@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.caconfig.spi.ConfigurationCollectionPersistData;
+import org.apache.sling.caconfig.spi.ConfigurationPersistData;
+import org.apache.sling.caconfig.spi.ConfigurationPersistenceStrategy2;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Persistence strategy writing configurations to the {@link InMemoryConfigurationStore} instead of the resource
+ * tree. Resource paths and config names are mapped as is, like the default persistence strategy.
+ * Only resources and paths of the store are mapped, all others are left to the other persistence strategies.
+ * New configurations are written to the store nevertheless, as this strategy is called first for persisting.
+ * Nothing has to be committed.
+ */
+final class InMemoryConfigurationPersistenceStrategy implements ConfigurationPersistenceStrategy2 {
+
+    private final InMemoryConfigurationStore store;
+
+    InMemoryConfigurationPersistenceStrategy(@NotNull InMemoryConfigurationStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public @Nullable Resource getResource(@NotNull Resource resource) {
+        return getStoreResource(resource);
+    }
+
+    @Override
+    public @Nullable Resource getCollectionParentResource(@NotNull Resource resource) {
+        return getStoreResource(resource);
+    }
+
+    @Override
+    public @Nullable Resource getCollectionItemResource(@NotNull Resource resource) {
+        return getStoreResource(resource);
+    }
+
+    @Override
+    public @Nullable String getResourcePath(@NotNull String resourcePath) {
+        return getStorePath(resourcePath);
+    }
+
+    @Override
+    public @Nullable String getCollectionParentResourcePath(@NotNull String resourcePath) {
+        return getStorePath(resourcePath);
+    }
+
+    @Override
+    public @Nullable String getCollectionItemResourcePath(@NotNull String resourcePath) {
+        return getStorePath(resourcePath);
+    }
+
+    @Override
+    public @Nullable String getConfigName(@NotNull String configName, @Nullable String relatedConfigPath) {
+        return configName;
+    }
+
+    @Override
+    public @Nullable String getCollectionParentConfigName(
+            @NotNull String configName, @Nullable String relatedConfigPath) {
+        return configName;
+    }
+
+    @Override
+    public @Nullable String getCollectionItemConfigName(
+            @NotNull String configName, @Nullable String relatedConfigPath) {
+        return configName;
+    }
+
+    @Override
+    public boolean persistConfiguration(
+            @NotNull ResourceResolver resourceResolver,
+            @NotNull String configResourcePath,
+            @NotNull ConfigurationPersistData data) {
+        store.putProperties(configResourcePath, data.getProperties());
+        return true;
+    }
+
+    @Override
+    public boolean persistConfigurationCollection(
+            @NotNull ResourceResolver resourceResolver,
+            @NotNull String configResourceCollectionParentPath,
+            @NotNull ConfigurationCollectionPersistData data) {
+        List<String> itemNames = new ArrayList<>();
+        for (ConfigurationPersistData item : data.getItems()) {
+            itemNames.add(item.getCollectionItemName());
+        }
+        store.deleteChildrenExcept(configResourceCollectionParentPath, itemNames);
+        if (data.getProperties() != null) {
+            store.putProperties(configResourceCollectionParentPath, data.getProperties());
+        }
+        for (ConfigurationPersistData item : data.getItems()) {
+            store.putProperties(
+                    configResourceCollectionParentPath + "/" + item.getCollectionItemName(), item.getProperties());
+        }
+        return true;
+    }
+
+    private static @Nullable Resource getStoreResource(@NotNull Resource resource) {
+        return resource instanceof InMemoryConfigurationResource ? resource : null;
+    }
+
+    private @Nullable String getStorePath(@NotNull String resourcePath) {
+        return store.exists(resourcePath) ? resourcePath : null;
+    }
+
+    @Override
+    public boolean deleteConfiguration(@NotNull ResourceResolver resourceResolver, @NotNull String configResourcePath) {
+        store.delete(configResourcePath);
+        return true;
+    }
+}
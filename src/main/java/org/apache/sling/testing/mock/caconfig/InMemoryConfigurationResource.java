@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.AbstractResource;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceMetadata;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Read-only resource backed by an entry of the {@link InMemoryConfigurationStore}.
+ * Children are looked up in the store as well, the parent is looked up via the resource resolver.
+ */
+final class InMemoryConfigurationResource extends AbstractResource {
+
+    static final String RESOURCE_TYPE = "nt:unstructured";
+
+    private final InMemoryConfigurationStore store;
+    private final ResourceResolver resourceResolver;
+    private final String path;
+    private final ValueMap properties;
+    private final ResourceMetadata metadata = new ResourceMetadata();
+
+    private InMemoryConfigurationResource(
+            InMemoryConfigurationStore store,
+            ResourceResolver resourceResolver,
+            String path,
+            Map<String, Object> properties) {
+        this.store = store;
+        this.resourceResolver = resourceResolver;
+        this.path = path;
+        this.properties = new ValueMapDecorator(properties);
+        this.metadata.setResolutionPath(path);
+    }
+
+    /**
+     * @param store Store
+     * @param resourceResolver Resource resolver
+     * @param path Resource path
+     * @return Resource, or null if the path does not exist in the store
+     */
+    static @Nullable Resource get(
+            @NotNull InMemoryConfigurationStore store,
+            @NotNull ResourceResolver resourceResolver,
+            @NotNull String path) {
+        Map<String, Object> properties = store.getProperties(path);
+        if (properties == null) {
+            return null;
+        }
+        return new InMemoryConfigurationResource(store, resourceResolver, path, properties);
+    }
+
+    @Override
+    public @NotNull String getPath() {
+        return path;
+    }
+
+    @Override
+    public @NotNull String getResourceType() {
+        return properties.get(ResourceResolver.PROPERTY_RESOURCE_TYPE, RESOURCE_TYPE);
+    }
+
+    @Override
+    public @Nullable String getResourceSuperType() {
+        return null;
+    }
+
+    @Override
+    public @NotNull ResourceMetadata getResourceMetadata() {
+        return metadata;
+    }
+
+    @Override
+    public @NotNull ResourceResolver getResourceResolver() {
+        return resourceResolver;
+    }
+
+    @Override
+    public @NotNull ValueMap getValueMap() {
+        return properties;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <AdapterType> @Nullable AdapterType adaptTo(@NotNull Class<AdapterType> type) {
+        if (type == ValueMap.class || type == Map.class) {
+            return (AdapterType) properties;
+        }
+        return super.adaptTo(type);
+    }
+
+    @Override
+    public @Nullable Resource getChild(@NotNull String relPath) {
+        return get(store, resourceResolver, path + "/" + relPath);
+    }
+
+    @Override
+    public @NotNull Iterator<Resource> listChildren() {
+        List<Resource> children = new ArrayList<>();
+        for (String name : store.getChildNames(path)) {
+            Resource child = getChild(name);
+            if (child != null) {
+                children.add(child);
+            }
+        }
+        return children.iterator();
+    }
+
+    @Override
+    public @NotNull Iterable<Resource> getChildren() {
+        return this::listChildren;
+    }
+
+    @Override
+    public boolean hasChildren() {
+        return !store.getChildNames(path).isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "InMemoryConfigurationResource[" + path + "]";
+    }
+}
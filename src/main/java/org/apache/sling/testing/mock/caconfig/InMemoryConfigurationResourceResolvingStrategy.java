@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.caconfig.management.multiplexer.ContextPathStrategyMultiplexer;
+import org.apache.sling.caconfig.resource.impl.def.DefaultConfigurationResourceResolvingStrategy;
+import org.apache.sling.caconfig.resource.spi.ConfigurationResourceResolvingStrategy;
+import org.apache.sling.caconfig.resource.spi.ContextResource;
+import org.apache.sling.testing.mock.sling.context.SlingContextImpl;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+/**
+ * Resolves configuration resources from the {@link InMemoryConfigurationStore}, following the rules of the default
+ * resource resolving strategy: The config references of the context resources are checked from the innermost to
+ * the outermost context, then the fallback paths. Configuration collections are merged along the inheritance chain
+ * if the collection parent has the property {@value #COLLECTION_INHERIT_PROPERTY} set.
+ * Property inheritance is applied by the configuration inheritance strategy as usual.
+ * <p>
+ * The config path and the fallback paths are read from the ConfigurationAdmin configuration of the
+ * {@link DefaultConfigurationResourceResolvingStrategy} on first use, so they match the default strategy.
+ * </p>
+ */
+final class InMemoryConfigurationResourceResolvingStrategy implements ConfigurationResourceResolvingStrategy {
+
+    static final String DEFAULT_STRATEGY_PID = DefaultConfigurationResourceResolvingStrategy.class.getName();
+    static final String COLLECTION_INHERIT_PROPERTY = "sling:configCollectionInherit";
+    private static final String PROPERTY_CONFIG_PATH = "configPath";
+    private static final String PROPERTY_FALLBACK_PATHS = "fallbackPaths";
+    private static final String DEFAULT_CONFIG_PATH = "/conf";
+    private static final String[] DEFAULT_FALLBACK_PATHS = {"/conf/global", "/apps/conf", "/libs/conf"};
+
+    private final SlingContextImpl context;
+    private final InMemoryConfigurationStore store;
+    private volatile ContextPathStrategyMultiplexer contextPathStrategy;
+    private volatile String configPath;
+    private volatile String[] fallbackPaths;
+
+    InMemoryConfigurationResourceResolvingStrategy(
+            @NotNull SlingContextImpl context, @NotNull InMemoryConfigurationStore store) {
+        this.context = context;
+        this.store = store;
+    }
+
+    @Override
+    public @Nullable Resource getResource(
+            @NotNull Resource contextResource, @NotNull Collection<String> bucketNames, @NotNull String configName) {
+        Iterator<Resource> chain = getResourceInheritanceChain(contextResource, bucketNames, configName);
+        return chain != null && chain.hasNext() ? chain.next() : null;
+    }
+
+    @Override
+    public @Nullable Iterator<Resource> getResourceInheritanceChain(
+            @NotNull Resource contextResource, @NotNull Collection<String> bucketNames, @NotNull String configName) {
+        List<Resource> chain = new ArrayList<>();
+        for (String path : getResolvePaths(contextResource, bucketNames, configName)) {
+            Resource resource = InMemoryConfigurationResource.get(store, contextResource.getResourceResolver(), path);
+            if (resource != null) {
+                chain.add(resource);
+            }
+        }
+        return chain.isEmpty() ? null : chain.iterator();
+    }
+
+    @Override
+    public @Nullable Collection<Resource> getResourceCollection(
+            @NotNull Resource contextResource, @NotNull Collection<String> bucketNames, @NotNull String configName) {
+        Collection<Iterator<Resource>> chains =
+                getResourceCollectionInheritanceChain(contextResource, bucketNames, configName);
+        if (chains == null) {
+            return null;
+        }
+        List<Resource> result = new ArrayList<>();
+        for (Iterator<Resource> chain : chains) {
+            result.add(chain.next());
+        }
+        return result;
+    }
+
+    @Override
+    public @Nullable Collection<Iterator<Resource>> getResourceCollectionInheritanceChain(
+            @NotNull Resource contextResource, @NotNull Collection<String> bucketNames, @NotNull String configName) {
+        // item name with the resources of all matching items along the inheritance chain
+        Map<String, List<Resource>> items = new LinkedHashMap<>();
+        boolean found = false;
+        for (String parentPath : getResolvePaths(contextResource, bucketNames, configName)) {
+            Resource parent =
+                    InMemoryConfigurationResource.get(store, contextResource.getResourceResolver(), parentPath);
+            if (parent == null) {
+                continue;
+            }
+            found = true;
+            for (Resource item : parent.getChildren()) {
+                items.computeIfAbsent(item.getName(), name -> new ArrayList<>()).add(item);
+            }
+            // continue with the next collection parent only if inheritance is enabled for this one
+            if (!parent.getValueMap().get(COLLECTION_INHERIT_PROPERTY, false)) {
+                break;
+            }
+        }
+        if (!found) {
+            return null;
+        }
+        List<Iterator<Resource>> result = new ArrayList<>();
+        for (List<Resource> itemChain : items.values()) {
+            result.add(itemChain.iterator());
+        }
+        return result;
+    }
+
+    @Override
+    public @Nullable String getResourcePath(
+            @NotNull Resource contextResource, @NotNull String bucketName, @NotNull String configName) {
+        for (String configRef : getConfigRefs(contextResource)) {
+            return configRef + "/" + bucketName + "/" + configName;
+        }
+        return null;
+    }
+
+    @Override
+    public @Nullable String getResourceCollectionParentPath(
+            @NotNull Resource contextResource, @NotNull String bucketName, @NotNull String configName) {
+        return getResourcePath(contextResource, bucketName, configName);
+    }
+
+    private List<String> getResolvePaths(Resource contextResource, Collection<String> bucketNames, String configName) {
+        Set<String> basePaths = new LinkedHashSet<>(getConfigRefs(contextResource));
+        readSettings();
+        Collections.addAll(basePaths, fallbackPaths);
+        List<String> paths = new ArrayList<>();
+        for (String basePath : basePaths) {
+            for (String bucketName : bucketNames) {
+                paths.add(basePath + "/" + bucketName + "/" + configName);
+            }
+        }
+        return paths;
+    }
+
+    private List<String> getConfigRefs(Resource contextResource) {
+        readSettings();
+        List<String> configRefs = new ArrayList<>();
+        Iterator<ContextResource> contextResources = getContextPathStrategy().findContextResources(contextResource);
+        while (contextResources.hasNext()) {
+            String configRef = contextResources.next().getConfigRef();
+            if (StringUtils.isBlank(configRef)) {
+                continue;
+            }
+            if (!configRef.startsWith("/")) {
+                configRef = configPath + "/" + configRef;
+            }
+            configRef = StringUtils.removeEnd(configRef, "/");
+            if (StringUtils.startsWith(configRef, configPath + "/") && !configRefs.contains(configRef)) {
+                configRefs.add(configRef);
+            }
+        }
+        return configRefs;
+    }
+
+    /**
+     * Reads config path and fallback paths from the configuration of the default strategy, if not read before.
+     */
+    private void readSettings() {
+        if (fallbackPaths != null) {
+            return;
+        }
+        Dictionary<String, Object> properties = null;
+        ConfigurationAdmin configAdmin = context.getService(ConfigurationAdmin.class);
+        if (configAdmin != null) {
+            try {
+                properties = configAdmin.getConfiguration(DEFAULT_STRATEGY_PID).getProperties();
+            } catch (IOException ex) {
+                throw new IllegalStateException("Unable to read configuration " + DEFAULT_STRATEGY_PID, ex);
+            }
+        }
+        Object configPathValue = properties != null ? properties.get(PROPERTY_CONFIG_PATH) : null;
+        configPath = StringUtils.removeEnd(
+                configPathValue instanceof String ? (String) configPathValue : DEFAULT_CONFIG_PATH, "/");
+        Object fallbackPathsValue = properties != null ? properties.get(PROPERTY_FALLBACK_PATHS) : null;
+        if (fallbackPathsValue instanceof String[]) {
+            fallbackPaths = (String[]) fallbackPathsValue;
+        } else if (fallbackPathsValue instanceof String) {
+            fallbackPaths = new String[] {(String) fallbackPathsValue};
+        } else {
+            fallbackPaths = DEFAULT_FALLBACK_PATHS;
+        }
+    }
+
+    private ContextPathStrategyMultiplexer getContextPathStrategy() {
+        if (contextPathStrategy == null) {
+            contextPathStrategy = context.getService(ContextPathStrategyMultiplexer.class);
+            if (contextPathStrategy == null) {
+                throw new IllegalStateException(
+                        "No " + ContextPathStrategyMultiplexer.class.getName() + " registered.");
+            }
+        }
+        return contextPathStrategy;
+    }
+}
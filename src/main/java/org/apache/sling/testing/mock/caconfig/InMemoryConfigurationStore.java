@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.sling.caconfig.resource.spi.ConfigurationResourceResolvingStrategy;
+import org.apache.sling.caconfig.spi.ConfigurationPersistenceStrategy2;
+import org.apache.sling.testing.mock.sling.context.SlingContextImpl;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.framework.Constants;
+
+/**
+ * Path-indexed in-memory store for the configuration resources of a context, used by
+ * {@link ContextPlugins#CACONFIG_INMEMORY} instead of the resource tree.
+ * Each node is indexed by its absolute resource path, and keeps its (unmodifiable) properties and the names of
+ * its children in insertion order, like the resource tree. Ancestor nodes without properties are created
+ * implicitly, like intermediate resources.
+ */
+final class InMemoryConfigurationStore {
+
+    static final int STRATEGY_RANKING = 10000;
+
+    private final Map<String, Node> nodes = new HashMap<>();
+
+    /**
+     * Register a new store with the in-memory persistence and resource resolving strategies in the given context.
+     * @param context Sling context
+     */
+    static void register(@NotNull SlingContextImpl context) {
+        InMemoryConfigurationStore store = new InMemoryConfigurationStore();
+        context.registerService(InMemoryConfigurationStore.class, store);
+        context.registerService(
+                ConfigurationPersistenceStrategy2.class,
+                new InMemoryConfigurationPersistenceStrategy(store),
+                Constants.SERVICE_RANKING,
+                STRATEGY_RANKING);
+        context.registerService(
+                ConfigurationResourceResolvingStrategy.class,
+                new InMemoryConfigurationResourceResolvingStrategy(context, store),
+                Constants.SERVICE_RANKING,
+                STRATEGY_RANKING);
+    }
+
+    /**
+     * @param path Resource path
+     * @return true if a node exists at the path
+     */
+    synchronized boolean exists(@NotNull String path) {
+        return nodes.containsKey(path);
+    }
+
+    /**
+     * @param path Resource path
+     * @return Properties, or null if the path does not exist
+     */
+    synchronized @Nullable Map<String, Object> getProperties(@NotNull String path) {
+        Node node = nodes.get(path);
+        return node != null ? node.properties : null;
+    }
+
+    /**
+     * @param path Resource path
+     * @return Names of the direct children of the path in insertion order
+     */
+    synchronized @NotNull List<String> getChildNames(@NotNull String path) {
+        Node node = nodes.get(path);
+        return node != null ? List.copyOf(node.childNames) : Collections.emptyList();
+    }
+
+    /**
+     * Replaces the properties at the given path. Children of the path are kept.
+     * @param path Resource path
+     * @param properties Properties, null values are ignored
+     */
+    synchronized void putProperties(@NotNull String path, @NotNull Map<String, Object> properties) {
+        Map<String, Object> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            if (entry.getValue() != null) {
+                copy.put(entry.getKey(), entry.getValue());
+            }
+        }
+        getOrCreateNode(path).properties = Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Removes the node at the given path with all its descendants.
+     * @param path Resource path
+     */
+    synchronized void delete(@NotNull String path) {
+        Node node = nodes.get(path);
+        if (node == null) {
+            return;
+        }
+        removeDescendants(path, node);
+        nodes.remove(path);
+        Node parent = nodes.get(getParentPath(path));
+        if (parent != null) {
+            parent.childNames.remove(getName(path));
+        }
+    }
+
+    /**
+     * Removes all children of the given path (with their descendants) not contained in the given names.
+     * @param path Resource path
+     * @param keepNames Child names to keep
+     */
+    synchronized void deleteChildrenExcept(@NotNull String path, @NotNull Collection<String> keepNames) {
+        for (String name : getChildNames(path)) {
+            if (!keepNames.contains(name)) {
+                delete(path + "/" + name);
+            }
+        }
+    }
+
+    private Node getOrCreateNode(String path) {
+        Node node = nodes.get(path);
+        if (node == null) {
+            node = new Node();
+            nodes.put(path, node);
+            if (!"/".equals(path)) {
+                getOrCreateNode(getParentPath(path)).childNames.add(getName(path));
+            }
+        }
+        return node;
+    }
+
+    private void removeDescendants(String path, Node node) {
+        for (String name : node.childNames) {
+            String childPath = path + "/" + name;
+            Node child = nodes.remove(childPath);
+            if (child != null) {
+                removeDescendants(childPath, child);
+            }
+        }
+    }
+
+    private static String getParentPath(String path) {
+        int index = path.lastIndexOf('/');
+        return index > 0 ? path.substring(0, index) : "/";
+    }
+
+    private static String getName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static final class Node {
+        private Map<String, Object> properties = Collections.emptyMap();
+        private final Set<String> childNames = new LinkedHashSet<>();
+    }
+}
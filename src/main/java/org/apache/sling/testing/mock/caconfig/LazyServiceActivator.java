@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.apache.sling.api.adapter.AdapterFactory;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.caconfig.ConfigurationBuilder;
+import org.apache.sling.caconfig.ConfigurationResolver;
+import org.apache.sling.caconfig.management.ConfigurationManager;
+import org.apache.sling.caconfig.resource.ConfigurationResourceResolver;
+import org.apache.sling.testing.mock.caconfig.ServiceGraphTemplate.Phase;
+import org.apache.sling.testing.mock.sling.context.SlingContextImpl;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * Registers lightweight placeholders for the main Context-Aware Configuration services, and activates the
+ * real services on first use of any of them.
+ */
+final class LazyServiceActivator {
+
+    private static final int PLACEHOLDER_RANKING = Integer.MIN_VALUE;
+
+    private final SlingContextImpl context;
+    private final List<String> deferredAnnotationClassNames = new ArrayList<>();
+    private boolean activated;
+    private ServiceRegistration<AdapterFactory> adapterFactoryPlaceholder;
+
+    private LazyServiceActivator(SlingContextImpl context) {
+        this.context = context;
+    }
+
+    /**
+     * Register activator and placeholder services in the given context.
+     * @param context Sling context
+     */
+    static void register(@NotNull SlingContextImpl context) {
+        LazyServiceActivator activator = new LazyServiceActivator(context);
+        context.registerService(LazyServiceActivator.class, activator);
+        activator.registerPlaceholder(ConfigurationResolver.class);
+        activator.registerPlaceholder(ConfigurationResourceResolver.class);
+        activator.registerPlaceholder(ConfigurationManager.class);
+        activator.registerAdapterFactoryPlaceholder();
+    }
+
+    /**
+     * Activates the real services if the lazy activator is registered in the given context.
+     * @param context Sling context
+     */
+    static void activateIfPresent(@NotNull SlingContextImpl context) {
+        LazyServiceActivator activator = context.getService(LazyServiceActivator.class);
+        if (activator != null) {
+            activator.activate();
+        }
+    }
+
+    /**
+     * Keeps the given annotation class names for registration on activation, if the lazy activator is registered
+     * and not yet activated in the given context.
+     * @param bundleContext Bundle context
+     * @param classNames Configuration annotation class names
+     * @return true if registration was deferred
+     */
+    static boolean deferAnnotationClasses(
+            @NotNull BundleContext bundleContext, @NotNull String @NotNull [] classNames) {
+        ServiceReference<LazyServiceActivator> ref = bundleContext.getServiceReference(LazyServiceActivator.class);
+        if (ref == null) {
+            return false;
+        }
+        LazyServiceActivator activator = bundleContext.getService(ref);
+        if (activator == null) {
+            return false;
+        }
+        try {
+            synchronized (activator) {
+                if (activator.activated) {
+                    return false;
+                }
+                activator.deferredAnnotationClassNames.addAll(Arrays.asList(classNames));
+                return true;
+            }
+        } finally {
+            bundleContext.ungetService(ref);
+        }
+    }
+
+    /**
+     * Register and activate all real services, if not done already.
+     */
+    synchronized void activate() {
+        if (activated) {
+            return;
+        }
+        activated = true;
+        long start = SetupTimings.start();
+
+        ServiceGraphTemplate template = ServiceGraphTemplate.get();
+        template.register(context, Phase.RESOURCE_RESOLVER);
+        template.register(context, Phase.RESOLVER);
+        template.register(context, Phase.MANAGEMENT);
+        template.register(context, Phase.RESOURCE_RESOLVER_DEFAULT_IMPL);
+        template.register(context, Phase.RESOLVER_DEFAULT_IMPL);
+
+        // the adapter manager consults the lowest ranking first, so remove the placeholder once the real
+        // adapter factory is registered
+        adapterFactoryPlaceholder.unregister();
+        adapterFactoryPlaceholder = null;
+
+        ConfigurationMetadataUtil.addAnnotationClassesForManifestEntries(context.bundleContext());
+        if (!deferredAnnotationClassNames.isEmpty()) {
+            ConfigurationMetadataUtil.registerAnnotationClasses(
+                    context.bundleContext(), deferredAnnotationClassNames.toArray(new String[0]));
+            deferredAnnotationClassNames.clear();
+        }
+        SetupTimings.record("lazyActivation", start);
+    }
+
+    private <T> void registerPlaceholder(Class<T> serviceClass) {
+        T placeholder = serviceClass.cast(Proxy.newProxyInstance(
+                serviceClass.getClassLoader(), new Class<?>[] {serviceClass}, new PlaceholderHandler(serviceClass)));
+        context.registerService(serviceClass, placeholder, Constants.SERVICE_RANKING, PLACEHOLDER_RANKING);
+    }
+
+    /**
+     * Registers the adapter factory placeholder via the bundle context to be able to unregister it on activation.
+     */
+    private void registerAdapterFactoryPlaceholder() {
+        Hashtable<String, Object> properties = new Hashtable<>();
+        properties.put(AdapterFactory.ADAPTABLE_CLASSES, Resource.class.getName());
+        properties.put(AdapterFactory.ADAPTER_CLASSES, ConfigurationBuilder.class.getName());
+        properties.put(Constants.SERVICE_RANKING, PLACEHOLDER_RANKING);
+        adapterFactoryPlaceholder = context.bundleContext()
+                .registerService(AdapterFactory.class, new ConfigurationBuilderAdapterFactoryPlaceholder(), properties);
+    }
+
+    /**
+     * Activates the real services and returns the highest-ranked real (non-placeholder, non-decorator) service.
+     */
+    private <T> @NotNull T getRealService(Class<T> serviceClass, @Nullable String filter) {
+        activate();
+        T[] services = context.getServices(serviceClass, filter);
+        for (T service : services) {
+            if (!isPlaceholder(service) && !ConfigurationBuilderCache.isDecorator(service)) {
+                return service;
+            }
+        }
+        throw new IllegalStateException("No " + serviceClass.getName() + " service registered.");
+    }
+
+    /**
+     * @param service Service instance
+     * @return true if the service is a placeholder registered by the lazy activator
+     */
+    static boolean isPlaceholder(@NotNull Object service) {
+        return service instanceof ConfigurationBuilderAdapterFactoryPlaceholder
+                || (Proxy.isProxyClass(service.getClass())
+                        && Proxy.getInvocationHandler(service) instanceof PlaceholderHandler);
+    }
+
+    /**
+     * Delegates all calls to the real service. Object methods are handled without activation.
+     */
+    private final class PlaceholderHandler implements InvocationHandler {
+
+        private final Class<?> serviceClass;
+
+        PlaceholderHandler(Class<?> serviceClass) {
+            this.serviceClass = serviceClass;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return "LazyPlaceholder[" + serviceClass.getName() + "]";
+                }
+            }
+            try {
+                return method.invoke(getRealService(serviceClass, null), args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+    /**
+     * Activates the real services on first adaption to {@link ConfigurationBuilder}. It is unregistered on
+     * activation, so only adaptions in progress at that time are delegated to the real adapter factory.
+     */
+    private final class ConfigurationBuilderAdapterFactoryPlaceholder implements AdapterFactory {
+
+        @Override
+        public <AdapterType> @Nullable AdapterType getAdapter(
+                @NotNull Object adaptable, @NotNull Class<AdapterType> type) {
+            AdapterFactory adapterFactory = getRealService(
+                    AdapterFactory.class,
+                    "(" + AdapterFactory.ADAPTER_CLASSES + "=" + ConfigurationBuilder.class.getName() + ")");
+            return adapterFactory.getAdapter(adaptable, type);
+        }
+    }
+}
@@ -18,14 +18,21 @@
  */
 package org.apache.sling.testing.mock.caconfig;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.caconfig.annotation.Configuration;
 import org.apache.sling.testing.mock.osgi.MapUtil;
 import org.apache.sling.testing.mock.sling.context.SlingContextImpl;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.osgi.annotation.versioning.ProviderType;
 
 /**
@@ -38,6 +45,17 @@ public final class MockContextAwareConfig {
         // static methods only
     }
 
+    /**
+     * Starts the expensive one-time initialization steps in background: the scan of the MANIFEST.MF files in the
+     * classpath for configuration classes, and the detection of the Context-Aware Configuration Impl version.
+     * Returns immediately. Test frameworks can call this method early, so the initialization runs in parallel to
+     * other initialization work. Calling it is optional, the context plugins start or await the steps when required.
+     */
+    public static void warmUp() {
+        ConfigurationMetadataUtil.startManifestScan();
+        ForkJoinPool.commonPool().execute(ServiceGraphTemplate::get);
+    }
+
     /**
      * Search classpath for given class names to scan for and register all classes with @Configuration annotation.
      * @param context Sling context
@@ -168,8 +186,367 @@ public final class MockContextAwareConfig {
         helper.writeConfigurationCollection(configName, values);
     }
 
+    /**
+     * Writes a large collection of configuration parameters using the primary configured persistence provider.
+     * The items are not copied, but converted one by one while they are written, so the memory used does not
+     * depend on the size of the collection.
+     * @param context Sling context
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param values Configuration values, the stream is consumed once and closed
+     */
+    public static void writeConfigurationCollection(
+            @NotNull SlingContextImpl context,
+            @NotNull String contextPath,
+            @NotNull Class<?> configClass,
+            @NotNull Stream<Map<String, Object>> values) {
+        writeConfigurationCollection(context, contextPath, getConfigurationName(configClass), values);
+    }
+
+    /**
+     * Writes a large collection of configuration parameters using the primary configured persistence provider.
+     * The items are not copied, but converted one by one while they are written, and committed in chunks of
+     * fixed size, so the memory used does not depend on the size of the collection, e.g.
+     * <code>IntStream.range(0, 50000).mapToObj(i -&gt; Map.of("param", "value" + i))</code>.
+     * <p>
+     * If the persistence strategy does not support writing single collection items, all items are collected
+     * before writing.
+     * </p>
+     * @param context Sling context
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param values Configuration values, the stream is consumed once and closed
+     */
+    public static void writeConfigurationCollection(
+            @NotNull SlingContextImpl context,
+            @NotNull String contextPath,
+            @NotNull String configName,
+            @NotNull Stream<Map<String, Object>> values) {
+        ConfigurationPersistHelper helper = new ConfigurationPersistHelper(context, contextPath);
+        helper.writeConfigurationCollection(configName, values);
+    }
+
+    /**
+     * Appends items to a configuration collection using the primary configured persistence provider.
+     * The existing items are not rewritten.
+     * @param context Sling context
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param values Configuration values of the new items
+     */
+    public static void appendConfigurationCollectionItems(
+            @NotNull SlingContextImpl context,
+            @NotNull String contextPath,
+            @NotNull Class<?> configClass,
+            @NotNull Collection<@NotNull Map<String, Object>> values) {
+        appendConfigurationCollectionItems(context, contextPath, getConfigurationName(configClass), values);
+    }
+
+    /**
+     * Appends items to a configuration collection using the primary configured persistence provider.
+     * The existing items are not rewritten.
+     * @param context Sling context
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param values Configuration values of the new items
+     */
+    public static void appendConfigurationCollectionItems(
+            @NotNull SlingContextImpl context,
+            @NotNull String contextPath,
+            @NotNull String configName,
+            @NotNull Collection<@NotNull Map<String, Object>> values) {
+        ConfigurationPersistHelper helper = new ConfigurationPersistHelper(context, contextPath);
+        helper.appendConfigurationCollectionItems(configName, values);
+    }
+
+    /**
+     * Replaces the values of a single configuration collection item using the primary configured persistence
+     * provider. The other items are not rewritten.
+     * @param context Sling context
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param itemName Collection item name
+     * @param values Configuration values
+     */
+    public static void updateConfigurationCollectionItem(
+            @NotNull SlingContextImpl context,
+            @NotNull String contextPath,
+            @NotNull Class<?> configClass,
+            @NotNull String itemName,
+            @NotNull Map<String, Object> values) {
+        updateConfigurationCollectionItem(context, contextPath, getConfigurationName(configClass), itemName, values);
+    }
+
+    /**
+     * Replaces the values of a single configuration collection item using the primary configured persistence
+     * provider. The other items are not rewritten.
+     * @param context Sling context
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param itemName Collection item name
+     * @param values Configuration values
+     */
+    public static void updateConfigurationCollectionItem(
+            @NotNull SlingContextImpl context,
+            @NotNull String contextPath,
+            @NotNull String configName,
+            @NotNull String itemName,
+            @NotNull Map<String, Object> values) {
+        ConfigurationPersistHelper helper = new ConfigurationPersistHelper(context, contextPath);
+        helper.updateConfigurationCollectionItem(configName, itemName, values);
+    }
+
+    /**
+     * Replaces the values of a single configuration collection item using the primary configured persistence
+     * provider. The other items are not rewritten.
+     * @param context Sling context
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param index Position of the item in the collection
+     * @param values Configuration values
+     */
+    public static void updateConfigurationCollectionItem(
+            @NotNull SlingContextImpl context,
+            @NotNull String contextPath,
+            @NotNull Class<?> configClass,
+            int index,
+            @NotNull Map<String, Object> values) {
+        updateConfigurationCollectionItem(context, contextPath, getConfigurationName(configClass), index, values);
+    }
+
+    /**
+     * Replaces the values of a single configuration collection item using the primary configured persistence
+     * provider. The other items are not rewritten.
+     * @param context Sling context
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param index Position of the item in the collection
+     * @param values Configuration values
+     */
+    public static void updateConfigurationCollectionItem(
+            @NotNull SlingContextImpl context,
+            @NotNull String contextPath,
+            @NotNull String configName,
+            int index,
+            @NotNull Map<String, Object> values) {
+        ConfigurationPersistHelper helper = new ConfigurationPersistHelper(context, contextPath);
+        helper.updateConfigurationCollectionItem(configName, index, values);
+    }
+
+    /**
+     * Removes items from a configuration collection using the primary configured persistence provider.
+     * The other items are not rewritten.
+     * @param context Sling context
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param itemNames Collection item names
+     */
+    public static void removeConfigurationCollectionItems(
+            @NotNull SlingContextImpl context,
+            @NotNull String contextPath,
+            @NotNull Class<?> configClass,
+            @NotNull String @NotNull ... itemNames) {
+        removeConfigurationCollectionItems(context, contextPath, getConfigurationName(configClass), itemNames);
+    }
+
+    /**
+     * Removes items from a configuration collection using the primary configured persistence provider.
+     * The other items are not rewritten.
+     * @param context Sling context
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param itemNames Collection item names
+     */
+    public static void removeConfigurationCollectionItems(
+            @NotNull SlingContextImpl context,
+            @NotNull String contextPath,
+            @NotNull String configName,
+            @NotNull String @NotNull ... itemNames) {
+        ConfigurationPersistHelper helper = new ConfigurationPersistHelper(context, contextPath);
+        helper.removeConfigurationCollectionItems(configName, Arrays.asList(itemNames));
+    }
+
+    /**
+     * Loads a configuration from a JSON object, or a configuration collection from a JSON array, and writes it
+     * using the primary configured persistence provider. The JSON is parsed as stream and written while parsing,
+     * without building maps for the whole configuration first.
+     * Nested JSON objects are written as nested configurations, nested arrays of objects as nested configuration
+     * collections.
+     * Requires the JSON-P API (<code>javax.json</code>) in the classpath.
+     * @param context Sling context
+     * @param contextPath Context path
+     * @param configClass Configuration class
+     * @param inputStream JSON input stream, is closed after loading
+     */
+    public static void loadConfiguration(
+            @NotNull SlingContextImpl context,
+            @NotNull String contextPath,
+            @NotNull Class<?> configClass,
+            @NotNull InputStream inputStream) {
+        loadConfiguration(context, contextPath, getConfigurationName(configClass), inputStream);
+    }
+
+    /**
+     * Loads a configuration from a JSON object, or a configuration collection from a JSON array, and writes it
+     * using the primary configured persistence provider. The JSON is parsed as stream and written while parsing,
+     * without building maps for the whole configuration first.
+     * Nested JSON objects are written as nested configurations, nested arrays of objects as nested configuration
+     * collections.
+     * Requires the JSON-P API (<code>javax.json</code>) in the classpath.
+     * @param context Sling context
+     * @param contextPath Context path
+     * @param configName Config name
+     * @param inputStream JSON input stream, is closed after loading
+     */
+    public static void loadConfiguration(
+            @NotNull SlingContextImpl context,
+            @NotNull String contextPath,
+            @NotNull String configName,
+            @NotNull InputStream inputStream) {
+        ConfigurationPersistHelper helper = new ConfigurationPersistHelper(context, contextPath);
+        new ConfigurationJsonLoader(helper).loadConfiguration(configName, inputStream);
+    }
+
+    /**
+     * Loads multiple configurations from a JSON object and writes them using the primary configured persistence
+     * provider. The JSON object has the config names as keys, and a configuration object or a configuration
+     * collection array as value, e.g. <code>{"x.y.MyConfig": {"param1": "value1"}, "listConfig": [{...}, {...}]}</code>.
+     * The JSON is parsed as stream and written while parsing.
+     * Requires the JSON-P API (<code>javax.json</code>) in the classpath.
+     * @param context Sling context
+     * @param contextPath Context path
+     * @param inputStream JSON input stream, is closed after loading
+     */
+    public static void loadConfigurations(
+            @NotNull SlingContextImpl context, @NotNull String contextPath, @NotNull InputStream inputStream) {
+        ConfigurationPersistHelper helper = new ConfigurationPersistHelper(context, contextPath);
+        new ConfigurationJsonLoader(helper).loadConfigurations(inputStream);
+    }
+
+    /**
+     * Exports the persisted configuration resources below the given path (e.g. <code>/conf</code>) to a binary
+     * snapshot file, which can be restored with {@link #restoreSnapshot(SlingContextImpl, Path)} in other contexts,
+     * e.g. in other test classes or forks.
+     * @param context Sling context
+     * @param path Root path of the resource subtree
+     * @param file Snapshot file, is overwritten if it exists
+     * @throws IOException if writing the file fails
+     */
+    public static void exportSnapshot(@NotNull SlingContextImpl context, @NotNull String path, @NotNull Path file)
+            throws IOException {
+        ConfigurationSnapshot.export(context.resourceResolver(), path, file);
+    }
+
+    /**
+     * Restores configuration resources from a snapshot file created with
+     * {@link #exportSnapshot(SlingContextImpl, String, Path)}. The resources are created directly with a single
+     * commit, which is much faster than writing the same configurations again. An existing resource at the root
+     * path of the snapshot is replaced.
+     * @param context Sling context
+     * @param file Snapshot file
+     * @throws IOException if reading the file fails or the file is not a valid snapshot
+     */
+    public static void restoreSnapshot(@NotNull SlingContextImpl context, @NotNull Path file) throws IOException {
+        ConfigurationSnapshot.restore(context.resourceResolver(), file);
+        ConfigurationBuilderCache.invalidateIfPresent(context);
+        ContextPathIndex.refreshIfPresent(context);
+    }
+
+    /**
+     * Records the current state of the given resource subtrees (e.g. <code>/conf</code>), so they can be restored
+     * with {@link ConfigurationBaseline#restore()}. This allows sharing a single context with the baseline
+     * configurations between all tests of a class, e.g. with a <code>@ClassRule</code> <code>SlingContext</code>,
+     * and restoring the baseline after each test instead of setting up a new context for each test.
+     * @param context Sling context
+     * @param paths Root paths of the resource subtrees
+     * @return Configuration baseline
+     */
+    public static @NotNull ConfigurationBaseline recordBaseline(
+            @NotNull SlingContextImpl context, @NotNull String @NotNull ... paths) {
+        return new ConfigurationBaseline(context, paths);
+    }
+
+    /**
+     * Writes configurations for multiple context paths using the primary configured persistence provider,
+     * with a single commit.
+     * @param context Sling context
+     * @param configurations Map with context path as key, and a map of configurations as value. The configuration
+     *     map has the config name as key, and either a {@link Map} with configuration values or a {@link Collection}
+     *     of such maps for configuration collections as value.
+     */
+    public static void writeConfigurations(
+            @NotNull SlingContextImpl context, @NotNull Map<String, ? extends Map<String, ?>> configurations) {
+        batch(context).writeConfigurations(configurations).commit();
+    }
+
+    /**
+     * Get a writer for configurations in the given context. The writer keeps the services and context resources
+     * it has looked up, so it should be reused when writing many configurations. Call
+     * {@link ConfigurationWriter#invalidate(String)} after replacing a context resource or changing its
+     * <code>sling:configRef</code>.
+     * Each configuration resource is committed by the persistence strategies, use {@link #batch(SlingContextImpl)}
+     * to commit all changes at once.
+     * @param context Sling context
+     * @return Configuration writer
+     */
+    public static @NotNull ConfigurationWriter writer(@NotNull SlingContextImpl context) {
+        return new ConfigurationWriter(context, context.resourceResolver());
+    }
+
+    /**
+     * Get a writer for configurations in the given context which writes incrementally: Before writing, the
+     * configuration currently persisted in the context is read and compared with the new values. Only
+     * configurations and configuration collection items with changed values are written, added collection items
+     * are appended and removed ones deleted. If the persistence strategy does not support writing single collection
+     * items, changed collections are written as a whole.
+     * <p>
+     * Incremental writes are faster when overwriting large configurations with only few changes, but slower when
+     * writing new configurations, as the persisted configuration has to be read first.
+     * </p>
+     * @param context Sling context
+     * @return Configuration writer
+     */
+    public static @NotNull ConfigurationWriter incrementalWriter(@NotNull SlingContextImpl context) {
+        return new ConfigurationWriter(context, context.resourceResolver(), true);
+    }
+
+    /**
+     * Starts a batch of configuration writes, which are committed at once with {@link ConfigurationBatch#commit()}.
+     * This is more efficient than writing each configuration separately, as the persistence strategies usually
+     * commit after each configuration resource written.
+     * @param context Sling context
+     * @return Configuration batch
+     */
+    public static @NotNull ConfigurationBatch batch(@NotNull SlingContextImpl context) {
+        return new ConfigurationBatch(context);
+    }
+
+    /**
+     * Get the configuration builder cache of the given context.
+     * @param context Sling context
+     * @return Configuration builder cache, or null if {@link ContextPlugins#CACONFIG_CACHE} is not used
+     */
+    public static @Nullable ConfigurationBuilderCache getConfigurationBuilderCache(@NotNull SlingContextImpl context) {
+        return context.getService(ConfigurationBuilderCache.class);
+    }
+
+    /**
+     * Discard the context path index entries for the given path and all paths below, if
+     * {@link ContextPlugins#CACONFIG_CONTEXT_PATH_INDEX} is used. This is only required after adding a
+     * <code>sling:configRef</code> property to an existing resource that was already visited by a lookup, without
+     * committing the change.
+     * @param context Sling context
+     * @param path Resource path
+     */
+    public static void refreshContextPathIndex(@NotNull SlingContextImpl context, @NotNull String path) {
+        ContextPathIndex index = context.getService(ContextPathIndex.class);
+        if (index != null) {
+            index.refresh(path);
+        }
+    }
+
     @SuppressWarnings("null")
-    private static @NotNull String getConfigurationName(Class<?> configClass) {
+    static @NotNull String getConfigurationName(Class<?> configClass) {
         Configuration annotation = configClass.getAnnotation(Configuration.class);
         if (annotation != null && StringUtils.isNotBlank(annotation.name())) {
             return annotation.name();
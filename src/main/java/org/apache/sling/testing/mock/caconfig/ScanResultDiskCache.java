@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.reflections.util.ClasspathHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optional disk cache for the results of the classpath scans for configuration classes, shared between JVMs
+ * (e.g. Surefire forks and subsequent builds).
+ * <p>
+ * The cache is enabled by setting the system property {@value #ENABLED_PROPERTY} to <code>true</code>.
+ * It is stored in <code>target/sling-caconfig-mock-scan-cache</code> by default, the directory can be changed
+ * with the system property {@value #DIRECTORY_PROPERTY}. There is a separate cache per scanned class loader, its
+ * file name is a hash over the classpath entries of the class loader and their timestamps, so any change in the
+ * classpath leads to a new scan. The <code>Class-Path</code> entries of JAR manifests are expanded, and JARs
+ * containing nothing but a manifest (e.g. the Surefire booter JAR, which gets a new name in each fork) are not
+ * part of the hash.
+ * </p>
+ */
+final class ScanResultDiskCache {
+
+    static final String ENABLED_PROPERTY = "org.apache.sling.testing.mock.caconfig.scanCache";
+    static final String DIRECTORY_PROPERTY = "org.apache.sling.testing.mock.caconfig.scanCacheDir";
+    static final String DEFAULT_DIRECTORY = "target/sling-caconfig-mock-scan-cache";
+
+    private static final String PACKAGE_KEY_PREFIX = "package.";
+    private static final String MANIFEST_KEY = "manifest";
+
+    private static final Logger log = LoggerFactory.getLogger(ScanResultDiskCache.class);
+
+    // values hold no reference to the class loader
+    private static final Map<ClassLoader, Optional<ScanResultDiskCache>> INSTANCES =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final Path file;
+    private final Properties properties;
+
+    ScanResultDiskCache(@NotNull Path file) {
+        this.file = file;
+        this.properties = load(file);
+    }
+
+    /**
+     * @param classLoader Class loader that is scanned
+     * @return Disk cache for the classpath of the class loader, or null if the disk cache is not enabled
+     */
+    static @Nullable ScanResultDiskCache get(@NotNull ClassLoader classLoader) {
+        if (!Boolean.getBoolean(ENABLED_PROPERTY)) {
+            return null;
+        }
+        // the fingerprint is calculated only when the cache is used for the first time with this class loader
+        return INSTANCES
+                .computeIfAbsent(classLoader, key -> Optional.ofNullable(create(key)))
+                .orElse(null);
+    }
+
+    /**
+     * @param packageName Package name
+     * @return Cached configuration class names in package, or null if not cached
+     */
+    @Nullable
+    List<String> getPackageClassNames(@NotNull String packageName) {
+        return split(getProperty(PACKAGE_KEY_PREFIX + packageName));
+    }
+
+    /**
+     * @param packageName Package name
+     * @param classNames Configuration class names in package
+     */
+    void putPackageClassNames(@NotNull String packageName, @NotNull Collection<String> classNames) {
+        putProperty(PACKAGE_KEY_PREFIX + packageName, StringUtils.join(classNames, ","));
+    }
+
+    /**
+     * @return Cached configuration class names from bundle manifests, or null if not cached
+     */
+    @Nullable
+    List<String> getManifestClassNames() {
+        return split(getProperty(MANIFEST_KEY));
+    }
+
+    /**
+     * @param classNames Configuration class names from bundle manifests
+     */
+    void putManifestClassNames(@NotNull Collection<String> classNames) {
+        putProperty(MANIFEST_KEY, StringUtils.join(classNames, ","));
+    }
+
+    private synchronized String getProperty(String key) {
+        return properties.getProperty(key);
+    }
+
+    private synchronized void putProperty(String key, String value) {
+        // merge with entries written by other JVMs in the meantime
+        properties.putAll(load(file));
+        properties.setProperty(key, value);
+        store();
+    }
+
+    private static @Nullable List<String> split(@Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+        return Arrays.asList(StringUtils.split(value, ","));
+    }
+
+    private static Properties load(Path file) {
+        Properties properties = new Properties();
+        if (Files.exists(file)) {
+            try (InputStream is = Files.newInputStream(file)) {
+                properties.load(is);
+            } catch (IOException ex) {
+                log.warn("Unable to read scan cache file {}", file, ex);
+            }
+        }
+        return properties;
+    }
+
+    private void store() {
+        try {
+            Files.createDirectories(file.getParent());
+            Path tempFile =
+                    Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (OutputStream os = Files.newOutputStream(tempFile)) {
+                properties.store(os, null);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            log.warn("Unable to write scan cache file {}", file, ex);
+        }
+    }
+
+    /**
+     * Builds a hash over all classpath entries with their size and last modification timestamp.
+     * For directories, all files contained are included.
+     * @param classPath Class path entries
+     * @return Hex-encoded hash
+     */
+    static @NotNull String getClassPathFingerprint(@NotNull Collection<Path> classPath) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Path path : classPath) {
+                digest.update(path.toString().getBytes(StandardCharsets.UTF_8));
+                if (Files.isDirectory(path)) {
+                    updateDirectory(digest, path);
+                } else if (Files.exists(path)) {
+                    updateFile(digest, path, Files.readAttributes(path, BasicFileAttributes.class));
+                }
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static void updateDirectory(MessageDigest digest, Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.walk(directory)) {
+            stream.filter(Files::isRegularFile).sorted().forEach(files::add);
+        }
+        for (Path path : files) {
+            updateFile(digest, path, Files.readAttributes(path, BasicFileAttributes.class));
+        }
+    }
+
+    private static void updateFile(MessageDigest digest, Path path, BasicFileAttributes attributes) {
+        digest.update(path.toString().getBytes(StandardCharsets.UTF_8));
+        digest.update(Long.toString(attributes.size()).getBytes(StandardCharsets.UTF_8));
+        digest.update(Long.toString(attributes.lastModifiedTime().toMillis()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Collects the classpath entries of the given class loader and its parents. The <code>java.class.path</code>
+     * entries are included if the system class loader is part of the hierarchy. The <code>Class-Path</code>
+     * entries of JAR manifests are expanded recursively, JARs containing only a manifest are skipped.
+     * @param classLoader Class loader
+     * @return Classpath entries existing in the file system, in classpath order
+     */
+    static @NotNull Set<Path> getClassPathEntries(@NotNull ClassLoader classLoader) {
+        Set<URL> urls = new LinkedHashSet<>(ClasspathHelper.forClassLoader(classLoader));
+        ClassLoader systemClassLoader = ClassLoader.getSystemClassLoader();
+        for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+            if (loader == systemClassLoader) {
+                urls.addAll(ClasspathHelper.forJavaClassPath());
+                break;
+            }
+        }
+        Set<Path> result = new LinkedHashSet<>();
+        Set<Path> visited = new LinkedHashSet<>();
+        for (URL url : urls) {
+            Path path = toPath(url);
+            if (path != null) {
+                addClassPathEntry(path, result, visited);
+            }
+        }
+        return result;
+    }
+
+    private static void addClassPathEntry(Path path, Set<Path> result, Set<Path> visited) {
+        Path normalized = path.toAbsolutePath().normalize();
+        if (!visited.add(normalized) || !Files.exists(normalized)) {
+            return;
+        }
+        if (Files.isDirectory(normalized)) {
+            result.add(normalized);
+            return;
+        }
+        try (JarFile jarFile = new JarFile(normalized.toFile())) {
+            Manifest manifest = jarFile.getManifest();
+            String classPath =
+                    manifest != null ? manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH) : null;
+            if (classPath == null || !isManifestOnly(jarFile)) {
+                result.add(normalized);
+            }
+            if (classPath != null) {
+                for (String entry : StringUtils.split(classPath, " ")) {
+                    Path entryPath = resolveManifestEntry(normalized, entry);
+                    if (entryPath != null) {
+                        addClassPathEntry(entryPath, result, visited);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            // not a JAR file, include it as it is
+            result.add(normalized);
+        }
+    }
+
+    private static boolean isManifestOnly(JarFile jarFile) {
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            if (!entry.isDirectory() && !StringUtils.startsWith(entry.getName(), "META-INF/")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static @Nullable Path resolveManifestEntry(Path jar, String entry) {
+        try {
+            // manifest class path entries are relative URLs
+            return toPath(new URL(jar.getParent().toUri().toURL(), entry));
+        } catch (IOException ex) {
+            log.debug("Ignoring invalid manifest class path entry {} in {}", entry, jar);
+            return null;
+        }
+    }
+
+    private static @Nullable Path toPath(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private static @Nullable ScanResultDiskCache create(ClassLoader classLoader) {
+        try {
+            Path directory = Paths.get(System.getProperty(DIRECTORY_PROPERTY, DEFAULT_DIRECTORY));
+            String fingerprint = getClassPathFingerprint(getClassPathEntries(classLoader));
+            return new ScanResultDiskCache(directory.resolve(fingerprint + ".properties"));
+        } catch (UncheckedIOException ex) {
+            log.warn("Unable to calculate classpath fingerprint, scan cache is disabled.", ex);
+            return null;
+        }
+    }
+}
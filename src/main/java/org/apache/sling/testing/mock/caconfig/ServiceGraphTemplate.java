@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.caconfig.impl.ConfigurationBuilderAdapterFactory;
+import org.apache.sling.caconfig.impl.ConfigurationResolverImpl;
+import org.apache.sling.caconfig.impl.def.DefaultConfigurationPersistenceStrategy;
+import org.apache.sling.caconfig.impl.metadata.AnnotationClassConfigurationMetadataProvider;
+import org.apache.sling.caconfig.management.impl.ConfigurationManagerImpl;
+import org.apache.sling.caconfig.management.impl.ContextPathStrategyMultiplexerImpl;
+import org.apache.sling.caconfig.resource.impl.ConfigurationResourceResolverImpl;
+import org.apache.sling.caconfig.resource.impl.def.DefaultConfigurationResourceResolvingStrategy;
+import org.apache.sling.caconfig.resource.impl.def.DefaultContextPathStrategy;
+import org.apache.sling.testing.mock.sling.context.SlingContextImpl;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Template of the Context-Aware Configuration service graph registered by {@link ContextPlugins}.
+ * The Impl generation is detected only once per classloader, and the list of service classes and their
+ * constructors is resolved from it without further classloader probing. Each context gets fresh service instances
+ * created from this template.
+ */
+final class ServiceGraphTemplate {
+
+    /**
+     * Groups of services registered together by the context plugins.
+     */
+    enum Phase {
+        RESOURCE_RESOLVER,
+        RESOURCE_RESOLVER_DEFAULT_IMPL,
+        RESOLVER,
+        RESOLVER_DEFAULT_IMPL,
+        MANAGEMENT,
+        MODELS_INJECTOR
+    }
+
+    private static final ServiceGraphTemplate INSTANCE = build();
+
+    private final ImplGeneration generation;
+    private final Map<Phase, List<Constructor<?>>> constructors;
+
+    private ServiceGraphTemplate(ImplGeneration generation, Map<Phase, List<Constructor<?>>> constructors) {
+        this.generation = generation;
+        this.constructors = constructors;
+    }
+
+    /**
+     * @return Service graph template
+     */
+    static @NotNull ServiceGraphTemplate get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return Impl generation detected in classpath
+     */
+    @NotNull
+    ImplGeneration getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @param phase Phase
+     * @return Service classes registered in this phase, in registration order
+     */
+    @NotNull
+    List<Class<?>> getServiceClasses(@NotNull Phase phase) {
+        List<Class<?>> classes = new ArrayList<>();
+        for (Constructor<?> constructor : constructors.get(phase)) {
+            classes.add(constructor.getDeclaringClass());
+        }
+        return classes;
+    }
+
+    /**
+     * Create new service instances for all services of the given phase and register them in the context.
+     * @param context Sling context
+     * @param phase Phase
+     */
+    void register(@NotNull SlingContextImpl context, @NotNull Phase phase) {
+        long phaseStart = SetupTimings.start();
+        for (Constructor<?> constructor : constructors.get(phase)) {
+            long start = SetupTimings.start();
+            context.registerInjectActivateService(newInstance(constructor));
+            SetupTimings.record("service:" + constructor.getDeclaringClass().getName(), start);
+        }
+        SetupTimings.record("phase:" + phase, phaseStart);
+    }
+
+    private static Object newInstance(Constructor<?> constructor) {
+        try {
+            return constructor.newInstance();
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException ex) {
+            throw new RuntimeException(
+                    "Unable to instantiate " + constructor.getDeclaringClass().getName(), ex);
+        }
+    }
+
+    private static ServiceGraphTemplate build() {
+        long start = SetupTimings.start();
+        ImplGeneration generation = ImplGeneration.detect();
+        SetupTimings.record("detectImplGeneration", start);
+
+        start = SetupTimings.start();
+        Map<Phase, List<Constructor<?>>> constructors = new EnumMap<>(Phase.class);
+        constructors.put(Phase.RESOURCE_RESOLVER, Collections.unmodifiableList(resourceResolver(generation)));
+        constructors.put(
+                Phase.RESOURCE_RESOLVER_DEFAULT_IMPL, Collections.unmodifiableList(resourceResolverDefaultImpl()));
+        constructors.put(Phase.RESOLVER, Collections.unmodifiableList(resolver(generation)));
+        constructors.put(Phase.RESOLVER_DEFAULT_IMPL, Collections.unmodifiableList(resolverDefaultImpl()));
+        constructors.put(Phase.MANAGEMENT, Collections.unmodifiableList(management()));
+        constructors.put(Phase.MODELS_INJECTOR, Collections.unmodifiableList(modelsInjector()));
+        SetupTimings.record("resolveServiceGraph", start);
+        return new ServiceGraphTemplate(generation, constructors);
+    }
+
+    /**
+     * Services for ConfigurationResourceResolver (without the default implementations).
+     */
+    private static List<Constructor<?>> resourceResolver(ImplGeneration generation) {
+        List<Constructor<?>> result = new ArrayList<>();
+        add(result, ContextPathStrategyMultiplexerImpl.class);
+        if (generation.isAtLeast(ImplGeneration.IMPL_1_3)) {
+            addByClassName(
+                    result,
+                    "org.apache.sling.caconfig.resource.impl.ConfigurationResourceResolvingStrategyMultiplexerImpl");
+        } else {
+            // impl 1.2
+            addByClassName(
+                    result,
+                    "org.apache.sling.caconfig.resource.impl.ConfigurationResourceResolvingStrategyMultiplexer");
+        }
+        add(result, ConfigurationResourceResolverImpl.class);
+        return result;
+    }
+
+    /**
+     * Default implementations for ConfigurationResourceResolver.
+     */
+    private static List<Constructor<?>> resourceResolverDefaultImpl() {
+        List<Constructor<?>> result = new ArrayList<>();
+        add(result, DefaultContextPathStrategy.class);
+        add(result, DefaultConfigurationResourceResolvingStrategy.class);
+        return result;
+    }
+
+    /**
+     * Services for ConfigurationResolver (without the default implementations).
+     */
+    private static List<Constructor<?>> resolver(ImplGeneration generation) {
+        List<Constructor<?>> result = new ArrayList<>();
+        if (generation.isAtLeast(ImplGeneration.IMPL_1_4)) {
+            addByClassName(result, "org.apache.sling.caconfig.management.impl.ConfigurationManagementSettingsImpl");
+        }
+
+        if (generation.isAtLeast(ImplGeneration.IMPL_1_3)) {
+            addByClassName(
+                    result,
+                    "org.apache.sling.caconfig.management.impl.ConfigurationPersistenceStrategyMultiplexerImpl");
+        } else {
+            // impl 1.2
+            addByClassName(
+                    result, "org.apache.sling.caconfig.management.impl.ConfigurationPersistenceStrategyMultiplexer");
+        }
+
+        // only required for impl 1.3+
+        if (generation.isAtLeast(ImplGeneration.IMPL_1_3)) {
+            addByClassName(result, "org.apache.sling.caconfig.impl.ConfigurationPersistenceStrategyBridge");
+        }
+
+        if (generation.isAtLeast(ImplGeneration.IMPL_1_3)) {
+            addByClassName(
+                    result, "org.apache.sling.caconfig.impl.metadata.ConfigurationMetadataProviderMultiplexerImpl");
+        } else {
+            // impl 1.2
+            addByClassName(result, "org.apache.sling.caconfig.impl.metadata.ConfigurationMetadataProviderMultiplexer");
+        }
+        if (generation.isAtLeast(ImplGeneration.IMPL_1_3)) {
+            addByClassName(result, "org.apache.sling.caconfig.impl.ConfigurationInheritanceStrategyMultiplexerImpl");
+        } else {
+            // impl 1.2 (not existing in 1.1 or below)
+            addByClassName(result, "org.apache.sling.caconfig.impl.ConfigurationInheritanceStrategyMultiplexer");
+        }
+        if (generation.isAtLeast(ImplGeneration.IMPL_1_3)) {
+            addByClassName(result, "org.apache.sling.caconfig.impl.override.ConfigurationOverrideMultiplexerImpl");
+        } else {
+            // impl 1.2 (not existing in 1.1 or below)
+            addByClassName(result, "org.apache.sling.caconfig.impl.override.ConfigurationOverrideManager");
+        }
+
+        add(result, ConfigurationResolverImpl.class);
+        add(result, ConfigurationBuilderAdapterFactory.class);
+        return result;
+    }
+
+    /**
+     * Default implementations for ConfigurationResolver.
+     */
+    private static List<Constructor<?>> resolverDefaultImpl() {
+        List<Constructor<?>> result = new ArrayList<>();
+        add(result, DefaultConfigurationPersistenceStrategy.class);
+
+        // only required for impl 1.2+
+        addByClassName(result, "org.apache.sling.caconfig.impl.def.DefaultConfigurationInheritanceStrategy");
+
+        // required for impl 1.6+
+        addByClassName(
+                result, "org.apache.sling.caconfig.impl.def.DefaultConfigurationInjectResourceDetectionStrategy");
+        return result;
+    }
+
+    /**
+     * Services for ConfigurationManager.
+     */
+    private static List<Constructor<?>> management() {
+        List<Constructor<?>> result = new ArrayList<>();
+        add(result, ConfigurationManagerImpl.class);
+        add(result, AnnotationClassConfigurationMetadataProvider.class);
+
+        // required for impl 1.6
+        addByClassName(
+                result, "org.apache.sling.caconfig.impl.ConfigurationInjectResourceDetectionStrategyMultiplexerImpl");
+        return result;
+    }
+
+    /**
+     * Sling Models injector for context-aware configuration.
+     */
+    private static List<Constructor<?>> modelsInjector() {
+        List<Constructor<?>> result = new ArrayList<>();
+        // required for impl 1.6
+        addByClassName(result, "org.apache.sling.models.caconfig.impl.injectors.ContextAwareConfigurationInjector");
+        return result;
+    }
+
+    /**
+     * Adds the constructor of the given class. Classes not present in the classpath are skipped.
+     * @return true if the class is present
+     */
+    private static boolean addByClassName(List<Constructor<?>> constructors, String className) {
+        try {
+            add(constructors, Class.forName(className));
+            return true;
+        } catch (ClassNotFoundException ex) {
+            return false;
+        }
+    }
+
+    private static void add(List<Constructor<?>> constructors, Class<?> clazz) {
+        try {
+            Constructor<?> constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            constructors.add(constructor);
+        } catch (NoSuchMethodException ex) {
+            throw new RuntimeException("No default constructor found for " + clazz.getName(), ex);
+        }
+    }
+}
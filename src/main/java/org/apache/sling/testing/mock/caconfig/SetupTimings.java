@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.NotNull;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Opt-in instrumentation for the setup steps of the {@link ContextPlugins}.
+ * Records count and nanosecond timings of each registration step and each synthetic bundle event,
+ * aggregated for the whole JVM.
+ * <p>
+ * Recording is enabled with {@link #enable()}, or by setting the system property
+ * {@value #ENABLED_PROPERTY} to <code>true</code>. In the latter case the report is written to
+ * <code>System.err</code> when the JVM shuts down.
+ * </p>
+ */
+@ProviderType
+public final class SetupTimings {
+
+    /**
+     * System property to enable recording of setup timings.
+     */
+    public static final String ENABLED_PROPERTY = "org.apache.sling.testing.mock.caconfig.setupTimings";
+
+    private static final ConcurrentMap<String, Step> STEPS = new ConcurrentHashMap<>();
+    private static volatile boolean enabled;
+
+    static {
+        if (Boolean.getBoolean(ENABLED_PROPERTY)) {
+            enabled = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(report())));
+        }
+    }
+
+    private SetupTimings() {
+        // static methods only
+    }
+
+    /**
+     * Enable recording of setup timings.
+     */
+    public static void enable() {
+        enabled = true;
+    }
+
+    /**
+     * Disable recording of setup timings. Recorded timings are kept.
+     */
+    public static void disable() {
+        enabled = false;
+    }
+
+    /**
+     * @return true if recording is enabled
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Discard all recorded timings.
+     */
+    public static void reset() {
+        STEPS.clear();
+    }
+
+    /**
+     * @return Recorded steps with total time in nanoseconds, sorted by total time descending
+     */
+    public static @NotNull Map<String, Long> getTotalNanos() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Step> entry : getSortedSteps()) {
+            result.put(entry.getKey(), entry.getValue().totalNanos.sum());
+        }
+        return result;
+    }
+
+    /**
+     * @return Recorded steps with invocation count, sorted by total time descending
+     */
+    public static @NotNull Map<String, Long> getCounts() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Step> entry : getSortedSteps()) {
+            result.put(entry.getKey(), entry.getValue().count.sum());
+        }
+        return result;
+    }
+
+    /**
+     * @return Human-readable report of all recorded steps, sorted by total time descending
+     */
+    public static @NotNull String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-100s %10s %12s %12s %12s%n", "Step", "Count", "Total ms", "Avg us", "Max us"));
+        for (Map.Entry<String, Step> entry : getSortedSteps()) {
+            Step step = entry.getValue();
+            long count = step.count.sum();
+            long total = step.totalNanos.sum();
+            sb.append(String.format(
+                    "%-100s %10d %12.3f %12.3f %12.3f%n",
+                    entry.getKey(),
+                    count,
+                    total / 1_000_000d,
+                    count > 0 ? total / 1_000d / count : 0d,
+                    step.maxNanos.get() / 1_000d));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return Start timestamp for {@link #record(String, long)}, or 0 if recording is disabled
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Record a step execution.
+     * @param stepName Step name
+     * @param start Start timestamp as returned by {@link #start()}
+     */
+    static void record(@NotNull String stepName, long start) {
+        if (start == 0L || !enabled) {
+            return;
+        }
+        long duration = System.nanoTime() - start;
+        Step step = STEPS.computeIfAbsent(stepName, key -> new Step());
+        step.count.increment();
+        step.totalNanos.add(duration);
+        step.maxNanos.accumulate(duration);
+    }
+
+    private static List<Map.Entry<String, Step>> getSortedSteps() {
+        List<Map.Entry<String, Step>> entries = new ArrayList<>(STEPS.entrySet());
+        Collections.sort(
+                entries,
+                Comparator.comparingLong((Map.Entry<String, Step> entry) ->
+                                entry.getValue().totalNanos.sum())
+                        .reversed());
+        return entries;
+    }
+
+    private static final class Step {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.sling.caconfig.impl.metadata.AnnotationClassParser;
+import org.apache.sling.caconfig.spi.ConfigurationMetadataProvider;
+import org.apache.sling.caconfig.spi.metadata.ConfigurationMetadata;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides configuration metadata for the annotation classes registered in a context.
+ * The metadata of each annotation class is parsed only once per JVM and shared between all contexts.
+ * It is stored in a {@link ClassValue} attached to the annotation class itself, so it does not keep
+ * class loaders reachable that are discarded otherwise.
+ */
+final class SharedConfigurationMetadataProvider implements ConfigurationMetadataProvider {
+
+    private static final ClassValue<ConfigurationMetadata> METADATA = new ClassValue<ConfigurationMetadata>() {
+        @Override
+        protected ConfigurationMetadata computeValue(Class<?> type) {
+            long start = SetupTimings.start();
+            ConfigurationMetadata metadata = AnnotationClassParser.buildConfigurationMetadata(type);
+            SetupTimings.record("parseConfigurationMetadata", start);
+            return metadata;
+        }
+    };
+
+    private static final Logger log = LoggerFactory.getLogger(SharedConfigurationMetadataProvider.class);
+
+    private final Map<String, ConfigurationMetadata> metadataByName = new ConcurrentSkipListMap<>();
+
+    /**
+     * Get the provider registered in the given bundle context, and register a new one if none exists.
+     * @param bundleContext Bundle context
+     * @return Provider
+     */
+    static synchronized @NotNull SharedConfigurationMetadataProvider getOrRegister(
+            @NotNull BundleContext bundleContext) {
+        ServiceReference<SharedConfigurationMetadataProvider> ref =
+                bundleContext.getServiceReference(SharedConfigurationMetadataProvider.class);
+        if (ref != null) {
+            SharedConfigurationMetadataProvider provider = bundleContext.getService(ref);
+            bundleContext.ungetService(ref);
+            if (provider != null) {
+                return provider;
+            }
+        }
+        SharedConfigurationMetadataProvider provider = new SharedConfigurationMetadataProvider();
+        bundleContext.registerService(
+                new String[] {
+                    SharedConfigurationMetadataProvider.class.getName(), ConfigurationMetadataProvider.class.getName()
+                },
+                provider,
+                null);
+        return provider;
+    }
+
+    /**
+     * @param clazz Configuration annotation class
+     * @return Shared metadata for the annotation class, parsed on first access
+     */
+    static @NotNull ConfigurationMetadata getMetadata(@NotNull Class<?> clazz) {
+        return METADATA.get(clazz);
+    }
+
+    /**
+     * Add annotation class to this provider.
+     * @param clazz Configuration annotation class
+     */
+    void addAnnotationClass(@NotNull Class<?> clazz) {
+        if (!AnnotationClassParser.isContextAwareConfig(clazz)) {
+            log.warn("Ignoring class without @Configuration annotation: {}", clazz.getName());
+            return;
+        }
+        ConfigurationMetadata metadata = getMetadata(clazz);
+        ConfigurationMetadata existing = metadataByName.putIfAbsent(metadata.getName(), metadata);
+        if (existing != null && existing != metadata) {
+            log.warn(
+                    "Configuration name {} from class {} conflicts with a configuration class registered before.",
+                    metadata.getName(),
+                    clazz.getName());
+        }
+    }
+
+    @Override
+    public @NotNull SortedSet<String> getConfigurationNames() {
+        return new TreeSet<>(metadataByName.keySet());
+    }
+
+    @Override
+    public @Nullable ConfigurationMetadata getConfigurationMetadata(String configName) {
+        return metadataByName.get(configName);
+    }
+}
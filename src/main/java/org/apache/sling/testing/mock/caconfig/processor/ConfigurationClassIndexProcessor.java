@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Annotation processor that writes an index of all classes annotated with
+ * {@link org.apache.sling.caconfig.annotation.Configuration} to {@value #INDEX_RESOURCE} at compile time.
+ * The index is used by the mock plugin instead of scanning the classpath when registering annotation packages.
+ * <p>
+ * The processor is registered via <code>META-INF/services</code> and picked up automatically by javac when this
+ * module is on the compile classpath.
+ * </p>
+ */
+@SupportedAnnotationTypes(ConfigurationClassIndexProcessor.CONFIGURATION_ANNOTATION)
+public class ConfigurationClassIndexProcessor extends AbstractProcessor {
+
+    /**
+     * Classpath resource containing the class names of all configuration classes, one per line.
+     */
+    public static final String INDEX_RESOURCE = "META-INF/sling-caconfig-mock/configuration-classes";
+
+    static final String CONFIGURATION_ANNOTATION = "org.apache.sling.caconfig.annotation.Configuration";
+
+    private final Set<String> classNames = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element instanceof TypeElement) {
+                    classNames.add(processingEnv
+                            .getElementUtils()
+                            .getBinaryName((TypeElement) element)
+                            .toString());
+                }
+            }
+        }
+        if (roundEnv.processingOver() && !classNames.isEmpty()) {
+            writeIndex();
+        }
+        return false;
+    }
+
+    private void writeIndex() {
+        // keep entries from previous (incremental) compilations, stale entries are ignored when reading the index
+        Set<String> allClassNames = new TreeSet<>(classNames);
+        readExistingIndex(allClassNames);
+        try {
+            FileObject file =
+                    processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE);
+            try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (String className : allClassNames) {
+                    writer.write(className);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException ex) {
+            processingEnv
+                    .getMessager()
+                    .printMessage(
+                            Diagnostic.Kind.WARNING,
+                            "Unable to write configuration class index " + INDEX_RESOURCE + ": " + ex.getMessage());
+        }
+    }
+
+    private void readExistingIndex(Set<String> allClassNames) {
+        try {
+            FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", INDEX_RESOURCE);
+            try (Reader reader = new InputStreamReader(file.openInputStream(), StandardCharsets.UTF_8);
+                    BufferedReader bufferedReader = new BufferedReader(reader)) {
+                String line;
+                while ((line = bufferedReader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        allClassNames.add(line.trim());
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException ex) {
+            // no existing index
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Minimal timing harness for the benchmark tests (classes named *Benchmark). They are not part of the unit tests
+ * and run with {@code mvn test -Pbenchmark}. Each benchmark compares the previous code path (baseline) with the
+ * optimized one and logs both measurements and their ratio. Wall-clock results depend on the machine and its load,
+ * so no assertions are made on them.
+ */
+final class Benchmarks {
+
+    static final int WARMUP_ITERATIONS = Integer.getInteger("caconfig.benchmark.warmup", 50);
+    static final int ITERATIONS = Integer.getInteger("caconfig.benchmark.iterations", 200);
+
+    private static final Logger log = LoggerFactory.getLogger(Benchmarks.class);
+
+    private Benchmarks() {
+        // static methods only
+    }
+
+    /**
+     * Operation to measure.
+     */
+    @FunctionalInterface
+    interface Operation {
+        void run() throws Throwable;
+    }
+
+    /**
+     * Operation to measure within a mock context.
+     */
+    @FunctionalInterface
+    interface ContextOperation {
+        void run(SlingContext context) throws Throwable;
+    }
+
+    /**
+     * Runs the operation for the warmup iterations, and then measures the average time of the measured iterations.
+     * @param name Name for the report
+     * @param operation Operation
+     * @return Average nanoseconds per operation
+     * @throws Throwable Throwable
+     */
+    static long nanosPerOperation(String name, Operation operation) throws Throwable {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            operation.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            operation.run();
+        }
+        long result = (System.nanoTime() - start) / ITERATIONS;
+        log.info(String.format("%-60s %,12d ns/op", name, result));
+        return result;
+    }
+
+    /**
+     * Runs the operation for the warmup iterations, and then measures the average number of bytes allocated by the
+     * current thread in the measured iterations.
+     * @param name Name for the report
+     * @param operation Operation
+     * @return Average bytes allocated per operation
+     * @throws Throwable Throwable
+     */
+    static long bytesPerOperation(String name, Operation operation) throws Throwable {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            operation.run();
+        }
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            operation.run();
+        }
+        long result = (threadBean.getThreadAllocatedBytes(threadId) - start) / ITERATIONS;
+        log.info(String.format("%-60s %,12d B/op", name, result));
+        return result;
+    }
+
+    /**
+     * Sets up the context, runs the operation within it and tears the context down again.
+     * @param context Context (not set up yet)
+     * @param operation Operation
+     * @throws Throwable Throwable
+     */
+    static void runInContext(SlingContext context, ContextOperation operation) throws Throwable {
+        context.apply(
+                        new Statement() {
+                            @Override
+                            public void evaluate() throws Throwable {
+                                operation.run(context);
+                            }
+                        },
+                        Description.EMPTY)
+                .evaluate();
+    }
+
+    /**
+     * Builds values for {@link org.apache.sling.testing.mock.caconfig.example.NestedConfig} with nested
+     * configurations and collections on each level.
+     * @param items Number of items of each nested collection
+     * @return Configuration values
+     */
+    static Map<String, Object> nestedConfigValues(int items) {
+        List<Map<String, Object>> sub = new ArrayList<>();
+        List<Map<String, Object>> sub2List = new ArrayList<>();
+        for (int i = 0; i < items; i++) {
+            sub.add(nestedConfigSubValues(i));
+            sub2List.add(nestedConfigSub2Values(i, items));
+        }
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("stringParam", "value");
+        values.put("sub", sub);
+        values.put("sub2", nestedConfigSub2Values(0, items));
+        values.put("sub2List", sub2List);
+        return values;
+    }
+
+    private static Map<String, Object> nestedConfigSub2Values(int index, int items) {
+        List<Map<String, Object>> subList = new ArrayList<>();
+        for (int i = 0; i < items; i++) {
+            subList.add(nestedConfigSubValues(i));
+        }
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("sub2StringParam", "sub2-" + index);
+        values.put("sub", nestedConfigSubValues(index));
+        values.put("subList", subList);
+        return values;
+    }
+
+    private static Map<String, Object> nestedConfigSubValues(int index) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("subStringParam", "sub-" + index);
+        values.put("intParam", index);
+        values.put("stringArrayParam", new String[] {"value" + index, "other" + index});
+        return values;
+    }
+
+    /**
+     * Logs the ratio of both measurements.
+     * @param name Name for the report
+     * @param baseline Measurement of the previous code path
+     * @param optimized Measurement of the optimized code path
+     */
+    static void reportRatio(String name, long baseline, long optimized) {
+        double ratio = optimized == 0 ? 0 : (double) baseline / optimized;
+        log.info(String.format("%-60s %12.2fx", name + " (baseline/optimized)", ratio));
+    }
+}
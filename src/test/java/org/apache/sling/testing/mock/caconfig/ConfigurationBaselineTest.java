@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.caconfig.ConfigurationBuilder;
+import org.apache.sling.testing.mock.caconfig.example.ListConfig;
+import org.apache.sling.testing.mock.caconfig.example.SimpleConfig;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@SuppressWarnings("null")
+public class ConfigurationBaselineTest {
+
+    @ClassRule
+    public static SlingContext context =
+            new SlingContextBuilder().plugin(CACONFIG).build();
+
+    private static ConfigurationBaseline baseline;
+
+    @Before
+    public void setUp() {
+        if (baseline == null) {
+            MockContextAwareConfig.registerAnnotationPackages(
+                    context, "org.apache.sling.testing.mock.caconfig.example");
+            context.create().resource("/content/site1", "sling:configRef", "/conf/site1");
+            context.create().resource("/content/site2", "sling:configRef", "/conf/site2");
+            MockContextAwareConfig.writeConfiguration(
+                    context, "/content/site1", SimpleConfig.class, "stringParam", "value1");
+            MockContextAwareConfig.writeConfigurationCollection(
+                    context, "/content/site1", ListConfig.class, List.of(Map.of("stringParam", "item1")));
+            baseline = MockContextAwareConfig.recordBaseline(context, "/conf");
+        }
+        assertBaseline();
+    }
+
+    @After
+    public void tearDown() {
+        baseline.restore();
+    }
+
+    @Test
+    public void testModifyConfiguration() {
+        MockContextAwareConfig.writeConfiguration(
+                context, "/content/site1", SimpleConfig.class, "stringParam", "value2");
+        MockContextAwareConfig.writeConfigurationCollection(
+                context,
+                "/content/site1",
+                ListConfig.class,
+                List.of(Map.of("stringParam", "item2"), Map.of("stringParam", "item3")));
+        assertEquals(
+                "value2", getBuilder("/content/site1").as(SimpleConfig.class).stringParam());
+        assertEquals(
+                2, getBuilder("/content/site1").asCollection(ListConfig.class).size());
+    }
+
+    @Test
+    public void testAddConfiguration() {
+        MockContextAwareConfig.writeConfiguration(
+                context, "/content/site2", SimpleConfig.class, "stringParam", "value3");
+        assertEquals(
+                "value3", getBuilder("/content/site2").as(SimpleConfig.class).stringParam());
+    }
+
+    @Test
+    public void testUncommittedChanges() throws Exception {
+        context.resourceResolver().delete(context.resourceResolver().getResource("/conf/site1"));
+        assertNull(context.resourceResolver().getResource("/conf/site1"));
+    }
+
+    private static void assertBaseline() {
+        assertEquals(
+                "value1", getBuilder("/content/site1").as(SimpleConfig.class).stringParam());
+        List<ListConfig> items = List.copyOf(getBuilder("/content/site1").asCollection(ListConfig.class));
+        assertEquals(1, items.size());
+        assertEquals("item1", items.get(0).stringParam());
+        assertNull(getBuilder("/content/site2").as(SimpleConfig.class).stringParam());
+    }
+
+    private static ConfigurationBuilder getBuilder(String contextPath) {
+        return context.resourceResolver().getResource(contextPath).adaptTo(ConfigurationBuilder.class);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.testing.mock.caconfig.example.NestedConfig;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
+
+/**
+ * Compares writing nested configurations for multiple context paths with a single commit via
+ * {@link ConfigurationBatch} with the per-call writes, where the persistence strategy commits for every nested
+ * configuration and collection, for the resource resolver mock and the JCR mock.
+ */
+@RunWith(Parameterized.class)
+public class ConfigurationBatchBenchmark {
+
+    private static final int CONTEXT_PATHS = 5;
+    private static final int ITEMS = 5;
+
+    private final ResourceResolverType resourceResolverType;
+
+    public ConfigurationBatchBenchmark(ResourceResolverType resourceResolverType) {
+        this.resourceResolverType = resourceResolverType;
+    }
+
+    @Parameters(name = "{0}")
+    public static List<ResourceResolverType> resourceResolverTypes() {
+        return List.of(ResourceResolverType.RESOURCERESOLVER_MOCK, ResourceResolverType.JCR_MOCK);
+    }
+
+    @Test
+    public void testWriteNestedConfigurations() throws Throwable {
+        Map<String, Object> values = Benchmarks.nestedConfigValues(ITEMS);
+        Benchmarks.runInContext(
+                new SlingContextBuilder(resourceResolverType).plugin(CACONFIG).build(), context -> {
+                    MockContextAwareConfig.registerAnnotationClasses(context, NestedConfig.class);
+                    for (int i = 0; i < CONTEXT_PATHS; i++) {
+                        context.create().resource("/content/site" + i, "sling:configRef", "/conf/site" + i);
+                    }
+                    context.resourceResolver().commit();
+
+                    long baseline = Benchmarks.nanosPerOperation(
+                            "write nested configurations (commit per call) " + resourceResolverType, () -> {
+                                for (int i = 0; i < CONTEXT_PATHS; i++) {
+                                    MockContextAwareConfig.writeConfiguration(
+                                            context, "/content/site" + i, NestedConfig.class, values);
+                                }
+                            });
+                    long optimized = Benchmarks.nanosPerOperation(
+                            "write nested configurations (batch) " + resourceResolverType, () -> {
+                                ConfigurationBatch batch = MockContextAwareConfig.batch(context);
+                                for (int i = 0; i < CONTEXT_PATHS; i++) {
+                                    batch.writeConfiguration("/content/site" + i, NestedConfig.class, values);
+                                }
+                                batch.commit();
+                            });
+                    Benchmarks.reportRatio("write nested configurations " + resourceResolverType, baseline, optimized);
+                });
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.sling.caconfig.ConfigurationBuilder;
+import org.apache.sling.testing.mock.caconfig.example.ListConfig;
+import org.apache.sling.testing.mock.caconfig.example.NestedConfig;
+import org.apache.sling.testing.mock.caconfig.example.SimpleConfig;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("null")
+public class ConfigurationBatchTest {
+
+    @Rule
+    public SlingContext context = new SlingContextBuilder().plugin(CACONFIG).build();
+
+    @Before
+    public void setUp() throws Exception {
+        MockContextAwareConfig.registerAnnotationPackages(context, "org.apache.sling.testing.mock.caconfig.example");
+        context.create().resource("/content/site1", "sling:configRef", "/conf/site1");
+        context.create().resource("/content/site2", "sling:configRef", "/conf/site2");
+        context.resourceResolver().commit();
+    }
+
+    @Test
+    public void testBatch() {
+        ConfigurationBatch batch = MockContextAwareConfig.batch(context)
+                .writeConfiguration("/content/site1", SimpleConfig.class, "stringParam", "value1")
+                .writeConfiguration("/content/site2", SimpleConfig.class, "stringParam", "value2")
+                .writeConfiguration(
+                        "/content/site1",
+                        NestedConfig.class,
+                        "stringParam",
+                        "value3",
+                        "sub",
+                        List.of(Map.of("subStringParam", "v1"), Map.of("subStringParam", "v2")),
+                        "sub2",
+                        Map.of("sub2StringParam", "v3"))
+                .writeConfigurationCollection(
+                        "/content/site2",
+                        ListConfig.class,
+                        List.of(Map.of("stringParam", "item1"), Map.of("stringParam", "item2")));
+
+        // all writes are staged, no commit yet
+        assertTrue(context.resourceResolver().hasChanges());
+        assertTrue(batch.getDeferredCommitCount() > 4);
+
+        batch.commit();
+        assertFalse(context.resourceResolver().hasChanges());
+        assertEquals(0, batch.getDeferredCommitCount());
+
+        assertEquals(
+                "value1", getBuilder("/content/site1").as(SimpleConfig.class).stringParam());
+        assertEquals(
+                "value2", getBuilder("/content/site2").as(SimpleConfig.class).stringParam());
+
+        NestedConfig nestedConfig = getBuilder("/content/site1").as(NestedConfig.class);
+        assertEquals("value3", nestedConfig.stringParam());
+        assertEquals(2, nestedConfig.sub().length);
+        assertEquals("v3", nestedConfig.sub2().sub2StringParam());
+
+        Collection<ListConfig> listConfig = getBuilder("/content/site2").asCollection(ListConfig.class);
+        assertEquals(2, listConfig.size());
+    }
+
+    @Test
+    public void testBatchCollectionItemOperations() {
+        MockContextAwareConfig.writeConfigurationCollection(
+                context,
+                "/content/site1",
+                ListConfig.class,
+                List.of(Map.of("stringParam", "item0"), Map.of("stringParam", "item1")));
+
+        MockContextAwareConfig.batch(context)
+                .appendConfigurationCollectionItems(
+                        "/content/site1", ListConfig.class, List.of(Map.of("stringParam", "item2")))
+                .updateConfigurationCollectionItem(
+                        "/content/site1", ListConfig.class, "item0", Map.of("stringParam", "a"))
+                .removeConfigurationCollectionItems("/content/site1", ListConfig.class, "item1")
+                .commit();
+        assertFalse(context.resourceResolver().hasChanges());
+
+        assertEquals(
+                List.of("a", "item2"),
+                getBuilder("/content/site1").asCollection(ListConfig.class).stream()
+                        .map(ListConfig::stringParam)
+                        .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testWriteConfigurations() throws Exception {
+        Map<String, Map<String, Object>> configurations = new LinkedHashMap<>();
+        for (int i = 0; i < 200; i++) {
+            String contextPath = "/content/tenant" + i;
+            context.create().resource(contextPath, "sling:configRef", "/conf/tenant" + i);
+            configurations.put(
+                    contextPath,
+                    Map.of(
+                            "testConfig",
+                            Map.of("stringParam", "value" + i),
+                            ListConfig.class.getName(),
+                            List.of(Map.of("stringParam", "item" + i))));
+        }
+        context.resourceResolver().commit();
+
+        MockContextAwareConfig.writeConfigurations(context, configurations);
+        assertFalse(context.resourceResolver().hasChanges());
+
+        assertEquals(
+                "value0", getBuilder("/content/tenant0").as(SimpleConfig.class).stringParam());
+        assertEquals(
+                "value199",
+                getBuilder("/content/tenant199").as(SimpleConfig.class).stringParam());
+        assertEquals(
+                "item100",
+                getBuilder("/content/tenant100")
+                        .asCollection(ListConfig.class)
+                        .iterator()
+                        .next()
+                        .stringParam());
+    }
+
+    @Test
+    public void testWriteConfigurationsInvalidContextPath() {
+        Map<String, Map<String, Object>> configurations = new LinkedHashMap<>();
+        configurations.put("/content/site1", Map.of("testConfig", Map.of("stringParam", "value1")));
+        configurations.put("/content/invalid", Map.of("testConfig", Map.of("stringParam", "value2")));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> MockContextAwareConfig.writeConfigurations(context, configurations));
+        assertFalse(context.resourceResolver().hasChanges());
+    }
+
+    private ConfigurationBuilder getBuilder(String contextPath) {
+        return context.resourceResolver().getResource(contextPath).adaptTo(ConfigurationBuilder.class);
+    }
+}
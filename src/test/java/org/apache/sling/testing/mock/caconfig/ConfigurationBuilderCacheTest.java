@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.caconfig.ConfigurationBuilder;
+import org.apache.sling.caconfig.management.ConfigurationManager;
+import org.apache.sling.caconfig.spi.ConfigurationPersistData;
+import org.apache.sling.testing.mock.caconfig.example.ListConfig;
+import org.apache.sling.testing.mock.caconfig.example.SimpleConfig;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG_CACHE;
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG_LAZY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+@SuppressWarnings("null")
+public class ConfigurationBuilderCacheTest {
+
+    @Rule
+    public SlingContext context = new SlingContextBuilder()
+            .plugin(CACONFIG_LAZY)
+            .plugin(CACONFIG_CACHE)
+            .build();
+
+    private ConfigurationBuilderCache cache;
+
+    @Before
+    public void setUp() {
+        MockContextAwareConfig.registerAnnotationPackages(context, "org.apache.sling.testing.mock.caconfig.example");
+        context.create().resource("/content/site1", "sling:configRef", "/conf/site1");
+        context.create().resource("/content/site1/page1/child1");
+        cache = MockContextAwareConfig.getConfigurationBuilderCache(context);
+        assertNotNull(cache);
+    }
+
+    @Test
+    public void testCachedLookups() {
+        MockContextAwareConfig.writeConfiguration(
+                context, "/content/site1", SimpleConfig.class, "stringParam", "value1");
+
+        SimpleConfig config = getBuilder("/content/site1/page1").as(SimpleConfig.class);
+        assertEquals("value1", config.stringParam());
+        for (int i = 0; i < 10; i++) {
+            assertSame(config, getBuilder("/content/site1/page1").as(SimpleConfig.class));
+        }
+        assertEquals(
+                "value1",
+                getBuilder("/content/site1/page1/child1").as(SimpleConfig.class).stringParam());
+        assertEquals(
+                "value1",
+                getBuilder("/content/site1/page1")
+                        .name(MockContextAwareConfig.getConfigurationName(SimpleConfig.class))
+                        .asValueMap()
+                        .get("stringParam", String.class));
+
+        assertEquals(10, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testInvalidateOnWrite() {
+        MockContextAwareConfig.writeConfiguration(
+                context, "/content/site1", SimpleConfig.class, "stringParam", "value1");
+        MockContextAwareConfig.writeConfigurationCollection(
+                context, "/content/site1", ListConfig.class, List.of(Map.of("stringParam", "item1")));
+        assertEquals(
+                "value1", getBuilder("/content/site1").as(SimpleConfig.class).stringParam());
+        Collection<ListConfig> items = getBuilder("/content/site1").asCollection(ListConfig.class);
+        assertEquals(1, items.size());
+        assertThrows(UnsupportedOperationException.class, () -> items.clear());
+
+        // write via mock helper
+        MockContextAwareConfig.writeConfiguration(
+                context, "/content/site1", SimpleConfig.class, "stringParam", "value2");
+        assertEquals(0, cache.size());
+        assertEquals(
+                "value2", getBuilder("/content/site1").as(SimpleConfig.class).stringParam());
+
+        // write via configuration manager
+        ConfigurationManager configManager = context.getService(ConfigurationManager.class);
+        configManager.persistConfiguration(
+                context.resourceResolver().getResource("/content/site1"),
+                MockContextAwareConfig.getConfigurationName(SimpleConfig.class),
+                new ConfigurationPersistData(Map.of("stringParam", "value3")));
+        assertEquals(
+                "value3", getBuilder("/content/site1").as(SimpleConfig.class).stringParam());
+
+        // delete via configuration manager
+        configManager.deleteConfiguration(
+                context.resourceResolver().getResource("/content/site1"),
+                MockContextAwareConfig.getConfigurationName(ListConfig.class));
+        assertEquals(
+                0, getBuilder("/content/site1").asCollection(ListConfig.class).size());
+    }
+
+    @Test
+    public void testInvalidateOnlyBelowContextPath() {
+        context.create().resource("/content/site2", "sling:configRef", "/conf/site2");
+        MockContextAwareConfig.writeConfiguration(
+                context, "/content/site1", SimpleConfig.class, "stringParam", "value1");
+        MockContextAwareConfig.writeConfiguration(
+                context, "/content/site2", SimpleConfig.class, "stringParam", "value2");
+        getBuilder("/content/site1/page1").as(SimpleConfig.class);
+        SimpleConfig site2Config = getBuilder("/content/site2").as(SimpleConfig.class);
+        assertEquals(2, cache.size());
+
+        MockContextAwareConfig.writeConfiguration(
+                context, "/content/site1", SimpleConfig.class, "stringParam", "value1a");
+        assertEquals(1, cache.size());
+        assertSame(site2Config, getBuilder("/content/site2").as(SimpleConfig.class));
+        assertEquals(
+                "value1a",
+                getBuilder("/content/site1/page1").as(SimpleConfig.class).stringParam());
+
+        cache.invalidate("/content/site2");
+        assertEquals(1, cache.size());
+        cache.invalidate();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testValueMapUnmodifiable() {
+        MockContextAwareConfig.writeConfiguration(
+                context, "/content/site1", SimpleConfig.class, "stringParam", "value1");
+        ValueMap props = getBuilder("/content/site1")
+                .name(MockContextAwareConfig.getConfigurationName(SimpleConfig.class))
+                .asValueMap();
+        assertEquals("value1", props.get("stringParam", String.class));
+        assertThrows(UnsupportedOperationException.class, () -> props.put("stringParam", "value2"));
+        assertEquals(
+                "value1",
+                getBuilder("/content/site1")
+                        .name(MockContextAwareConfig.getConfigurationName(SimpleConfig.class))
+                        .asValueMap()
+                        .get("stringParam", String.class));
+    }
+
+    @Test
+    public void testInvalidateOnBaselineRestore() {
+        MockContextAwareConfig.writeConfiguration(
+                context, "/content/site1", SimpleConfig.class, "stringParam", "value1");
+        ConfigurationBaseline baseline = MockContextAwareConfig.recordBaseline(context, "/conf");
+        MockContextAwareConfig.writeConfiguration(
+                context, "/content/site1", SimpleConfig.class, "stringParam", "value2");
+        assertEquals(
+                "value2", getBuilder("/content/site1").as(SimpleConfig.class).stringParam());
+
+        baseline.restore();
+        assertEquals(
+                "value1", getBuilder("/content/site1").as(SimpleConfig.class).stringParam());
+    }
+
+    private ConfigurationBuilder getBuilder(String path) {
+        return context.resourceResolver().getResource(path).adaptTo(ConfigurationBuilder.class);
+    }
+}
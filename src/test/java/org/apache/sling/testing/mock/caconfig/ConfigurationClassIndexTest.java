@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.sling.testing.mock.caconfig.example.ListConfig;
+import org.apache.sling.testing.mock.caconfig.example.NestedConfig;
+import org.apache.sling.testing.mock.caconfig.example.NestedListConfig;
+import org.apache.sling.testing.mock.caconfig.example.SimpleConfig;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigurationClassIndexTest {
+
+    private static final String EXAMPLE_PACKAGE = "org.apache.sling.testing.mock.caconfig.example";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIndexFromTestCompilation() {
+        // index is generated by the annotation processor when compiling the test classes
+        ConfigurationClassIndex index = ConfigurationClassIndex.read(getClass().getClassLoader());
+        assertNotNull(index);
+
+        List<String> classNames = index.getConfigurationClassNames(EXAMPLE_PACKAGE);
+        assertEquals(
+                Set.of(
+                        ListConfig.class.getName(),
+                        NestedConfig.class.getName(),
+                        NestedListConfig.class.getName(),
+                        SimpleConfig.class.getName()),
+                Set.copyOf(classNames));
+        assertTrue(index.getConfigurationClassNames("org.apache.sling.testing.mock.caconfig.unknown")
+                .isEmpty());
+    }
+
+    @Test
+    public void testGetConfigurationClassesForPackages() {
+        assertEquals(
+                Set.of(ListConfig.class, NestedConfig.class, NestedListConfig.class, SimpleConfig.class),
+                Set.copyOf(ConfigurationMetadataUtil.getConfigurationClassesForPackages(EXAMPLE_PACKAGE)));
+    }
+
+    @Test
+    public void testUnindexedClasspathRootIsScanned() throws Exception {
+        // configuration class in the same package, but in a classpath root without index
+        String className = EXAMPLE_PACKAGE + ".UnindexedConfig";
+        URL root = TestConfigurationClasses.compile(folder.newFolder("classes"), className);
+
+        Thread thread = Thread.currentThread();
+        ClassLoader originalClassLoader = thread.getContextClassLoader();
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[] {root}, originalClassLoader)) {
+            ConfigurationClassIndex index = ConfigurationClassIndex.read(classLoader);
+            assertNotNull(index);
+            assertFalse(index.isIndexed(root));
+
+            thread.setContextClassLoader(classLoader);
+            Collection<Class> classes = ConfigurationMetadataUtil.getConfigurationClassesForPackages(EXAMPLE_PACKAGE);
+            assertEquals(
+                    Set.of(
+                            ListConfig.class.getName(),
+                            NestedConfig.class.getName(),
+                            NestedListConfig.class.getName(),
+                            SimpleConfig.class.getName(),
+                            className),
+                    classes.stream().map(Class::getName).collect(Collectors.toSet()));
+        } finally {
+            thread.setContextClassLoader(originalClassLoader);
+        }
+    }
+}
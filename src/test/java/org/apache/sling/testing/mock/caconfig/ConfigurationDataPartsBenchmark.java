@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Compares the allocation of {@link ConfigurationDataParts} per write with the previous implementation, which
+ * copied every input map into three TreeMaps. The nested input is split on all levels, as done when writing a
+ * nested configuration.
+ */
+public class ConfigurationDataPartsBenchmark {
+
+    private static final int ITEMS = 10;
+
+    @Test
+    public void testFlat() throws Throwable {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < ITEMS; i++) {
+            values.put("param" + i, "value" + i);
+        }
+        measure("flat", values);
+    }
+
+    @Test
+    public void testNested() throws Throwable {
+        measure("nested", Benchmarks.nestedConfigValues(ITEMS));
+    }
+
+    private static void measure(String name, Map<String, Object> values) throws Throwable {
+        long baseline = Benchmarks.bytesPerOperation("split " + name + " (three TreeMaps)", () -> {
+            splitLegacy(values);
+        });
+        long optimized = Benchmarks.bytesPerOperation("split " + name + " (configuration data parts)", () -> {
+            split(values);
+        });
+        Benchmarks.reportRatio("split " + name, baseline, optimized);
+    }
+
+    private static void split(Map<String, Object> values) {
+        ConfigurationDataParts parts = new ConfigurationDataParts(values);
+        for (Map.Entry<String, Map<String, Object>> entry : parts.getMaps()) {
+            split(entry.getValue());
+        }
+        for (Map.Entry<String, Collection<Map<String, Object>>> entry : parts.getCollections()) {
+            for (Map<String, Object> item : entry.getValue()) {
+                split(item);
+            }
+        }
+    }
+
+    /**
+     * Classification as done before the parts were collected into lists.
+     */
+    @SuppressWarnings("unchecked")
+    private static void splitLegacy(Map<String, Object> input) {
+        Map<String, Object> values = new TreeMap<>();
+        Map<String, Map<String, Object>> maps = new TreeMap<>();
+        Map<String, Collection<Map<String, Object>>> collections = new TreeMap<>();
+        for (Map.Entry<String, Object> entry : input.entrySet()) {
+            if (entry.getValue() instanceof Map) {
+                maps.put(entry.getKey(), (Map<String, Object>) entry.getValue());
+            } else if (entry.getValue() instanceof Collection) {
+                collections.put(entry.getKey(), (Collection<Map<String, Object>>) entry.getValue());
+            } else {
+                values.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map<String, Object> map : maps.values()) {
+            splitLegacy(map);
+        }
+        for (Collection<Map<String, Object>> collection : collections.values()) {
+            for (Map<String, Object> item : collection) {
+                splitLegacy(item);
+            }
+        }
+    }
+}
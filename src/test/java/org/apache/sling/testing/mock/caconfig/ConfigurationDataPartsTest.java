@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigurationDataPartsTest {
+
+    @Test
+    public void testFlat() {
+        Map<String, Object> input = Map.of("param1", "value1", "param2", 5);
+        ConfigurationDataParts parts = new ConfigurationDataParts(input);
+
+        assertFalse(parts.hasNested());
+        assertEquals(input, parts.getValues());
+        assertTrue(parts.getMaps().isEmpty());
+        assertTrue(parts.getCollections().isEmpty());
+        assertThrows(
+                UnsupportedOperationException.class, () -> parts.getValues().put("param3", "value3"));
+    }
+
+    @Test
+    public void testNestedSorted() {
+        Map<String, Object> input = new LinkedHashMap<>();
+        input.put("z", "value1");
+        input.put("sub2", Map.of("p", "v"));
+        input.put("list2", List.of(Map.of("p", "v")));
+        input.put("a", 5);
+        input.put("sub1", Map.of("p", "v"));
+        input.put("list1", List.of());
+        ConfigurationDataParts parts = new ConfigurationDataParts(input);
+
+        assertTrue(parts.hasNested());
+        assertEquals(Map.of("z", "value1", "a", 5), parts.getValues());
+        assertEquals(List.of("a", "z"), List.copyOf(parts.getValues().keySet()));
+        assertNull(parts.getValues().get("sub1"));
+        assertFalse(parts.getValues().containsKey("list1"));
+        assertEquals(List.of("sub1", "sub2"), keys(parts.getMaps()));
+        assertEquals(List.of("list1", "list2"), keys(parts.getCollections()));
+    }
+
+    @Test
+    public void testValuesCopied() {
+        Map<String, Object> input = new LinkedHashMap<>();
+        input.put("param1", "value1");
+        ConfigurationDataParts parts = new ConfigurationDataParts(input);
+        input.put("param1", "value2");
+
+        assertEquals(Map.of("param1", "value1"), parts.getValues());
+    }
+
+    private static List<String> keys(List<? extends Map.Entry<String, ?>> entries) {
+        return entries.stream().map(Map.Entry::getKey).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.testing.mock.caconfig.example.ListConfig;
+import org.apache.sling.testing.mock.caconfig.example.NestedConfig;
+import org.apache.sling.testing.mock.caconfig.example.NestedListConfig;
+import org.apache.sling.testing.mock.caconfig.example.SimpleConfig;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigurationMetadataUtilTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String EXAMPLE_PACKAGE = "org.apache.sling.testing.mock.caconfig.example";
+    private static final String OTHER_PACKAGE = "org.apache.sling.testing.mock.caconfig.persistence";
+    private static final String DISCARDED_CLASS = "org.apache.sling.testing.mock.caconfig.discarded.DiscardedConfig";
+    private static final long GC_TIMEOUT_SECONDS = 60;
+    private static final Set<Class> EXAMPLE_CLASSES =
+            Set.of(ListConfig.class, NestedConfig.class, NestedListConfig.class, SimpleConfig.class);
+
+    @Test
+    public void testScanManifestValues() {
+        MockContextAwareConfig.warmUp();
+        Collection<String> symbolicNames = ConfigurationMetadataUtil.scanManifestValues("Bundle-SymbolicName");
+        assertTrue(symbolicNames.contains("org.apache.sling.caconfig.api"));
+        assertEquals(symbolicNames.size(), Set.copyOf(symbolicNames).size());
+    }
+
+    @Test
+    public void testDiscardedClassLoaderIsCollected() throws Exception {
+        URL root = TestConfigurationClasses.compile(folder.newFolder("classes"), DISCARDED_CLASS);
+        ReferenceQueue<Object> queue = new ReferenceQueue<>();
+        List<WeakReference<Object>> refs = scanWithDiscardedClassLoader(root, queue);
+        assertTrue("class loader and configuration class collected", awaitCollected(queue, refs.size()));
+        assertNull("class loader", refs.get(0).get());
+        assertNull("configuration class", refs.get(1).get());
+    }
+
+    /**
+     * Waits until the given number of references is enqueued, triggering garbage collection under allocation
+     * pressure until then. Bounded by time instead of a fixed number of attempts to cope with loaded machines
+     * and garbage collectors which do not collect everything on {@link System#gc()}.
+     */
+    private static boolean awaitCollected(ReferenceQueue<Object> queue, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(GC_TIMEOUT_SECONDS);
+        int collected = 0;
+        while (collected < count && System.nanoTime() < deadline) {
+            List<byte[]> garbage = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                garbage.add(new byte[1024 * 1024]);
+            }
+            garbage.clear();
+            System.gc();
+            while (queue.remove(100) != null) {
+                collected++;
+            }
+        }
+        return collected >= count;
+    }
+
+    private static List<WeakReference<Object>> scanWithDiscardedClassLoader(URL root, ReferenceQueue<Object> queue)
+            throws Exception {
+        Thread thread = Thread.currentThread();
+        ClassLoader originalClassLoader = thread.getContextClassLoader();
+        ChildFirstClassLoader classLoader = new ChildFirstClassLoader(root, originalClassLoader);
+        try {
+            thread.setContextClassLoader(classLoader);
+            Collection<Class> classes = ConfigurationMetadataUtil.getConfigurationClassesForPackages(
+                    StringUtils.substringBeforeLast(DISCARDED_CLASS, "."));
+            assertEquals(1, classes.size());
+            Class<?> clazz = classes.iterator().next();
+            assertEquals(DISCARDED_CLASS, clazz.getName());
+            assertSame(classLoader, clazz.getClassLoader());
+            assertNotNull(SharedConfigurationMetadataProvider.getMetadata(clazz));
+            assertTrue(ConfigurationMetadataUtil.getClassLoaderCacheCount() >= 1);
+            return List.of(new WeakReference<>(classLoader, queue), new WeakReference<>(clazz, queue));
+        } finally {
+            thread.setContextClassLoader(originalClassLoader);
+            classLoader.close();
+        }
+    }
+
+    /**
+     * Defines the classes of its own classpath root itself instead of delegating to the parent class loader first.
+     */
+    private static final class ChildFirstClassLoader extends URLClassLoader {
+
+        ChildFirstClassLoader(URL root, ClassLoader parent) {
+            super(new URL[] {root}, parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> clazz = findLoadedClass(name);
+                if (clazz == null) {
+                    try {
+                        clazz = findClass(name);
+                    } catch (ClassNotFoundException ex) {
+                        return super.loadClass(name, resolve);
+                    }
+                }
+                if (resolve) {
+                    resolveClass(clazz);
+                }
+                return clazz;
+            }
+        }
+    }
+
+    @Test
+    public void testNormalizePackageNames() {
+        assertEquals(
+                List.of("a.b", "c.d"),
+                new ArrayList<>(ConfigurationMetadataUtil.normalizePackageNames(" c.d,a.b,,c.d ")));
+    }
+
+    @Test
+    public void testGetConfigurationClassesForPackagesOrderInsensitive() {
+        Collection<Class> classes1 =
+                ConfigurationMetadataUtil.getConfigurationClassesForPackages(EXAMPLE_PACKAGE + "," + OTHER_PACKAGE);
+        Collection<Class> classes2 =
+                ConfigurationMetadataUtil.getConfigurationClassesForPackages(OTHER_PACKAGE + ", " + EXAMPLE_PACKAGE);
+        assertEquals(EXAMPLE_CLASSES, Set.copyOf(classes1));
+        assertEquals(List.copyOf(classes1), List.copyOf(classes2));
+    }
+
+    @Test
+    public void testGetConfigurationClassesForPackagesConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Collection<Class>>> tasks = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                tasks.add(() -> ConfigurationMetadataUtil.getConfigurationClassesForPackages(EXAMPLE_PACKAGE));
+            }
+            for (Future<Collection<Class>> future : executor.invokeAll(tasks)) {
+                assertEquals(EXAMPLE_CLASSES, Set.copyOf(future.get()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.caconfig.management.multiplexer.ConfigurationPersistenceStrategyMultiplexer;
+import org.apache.sling.caconfig.spi.ConfigurationPersistenceStrategy2;
+import org.apache.sling.testing.mock.caconfig.example.NestedConfig;
+import org.apache.sling.testing.mock.caconfig.persistence.CustomConfigurationPersistenceStrategy2;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
+
+/**
+ * Compares the config name mappings needed to write a nested {@link NestedConfig} tree via the
+ * {@link ConfigurationNameMappingCache} with asking the persistence strategy multiplexer for every nested
+ * configuration, as before the cache was introduced. A custom persistence strategy mapping the names with regular
+ * expressions is registered with a higher ranking than the default strategy.
+ */
+public class ConfigurationNameMappingCacheBenchmark {
+
+    private static final int ITEMS = 10;
+
+    @Test
+    public void testNestedConfigNameMapping() throws Throwable {
+        Map<String, Object> values = Benchmarks.nestedConfigValues(ITEMS);
+        String configName = NestedConfig.class.getName();
+        Benchmarks.runInContext(new SlingContextBuilder().plugin(CACONFIG).build(), context -> {
+            context.registerService(
+                    ConfigurationPersistenceStrategy2.class,
+                    new CustomConfigurationPersistenceStrategy2(),
+                    Constants.SERVICE_RANKING,
+                    2000);
+            ConfigurationPersistenceStrategyMultiplexer multiplexer =
+                    context.getService(ConfigurationPersistenceStrategyMultiplexer.class);
+
+            NameMapping uncached = new NameMapping(
+                    name -> StringUtils.defaultString(multiplexer.getConfigName(name, null), name),
+                    name -> StringUtils.defaultString(multiplexer.getCollectionParentConfigName(name, null), name),
+                    name -> StringUtils.defaultString(multiplexer.getCollectionItemConfigName(name, null), name));
+            ConfigurationNameMappingCache cache = ConfigurationNameMappingCache.get(context, multiplexer);
+            NameMapping cached = new NameMapping(
+                    cache::getConfigName, cache::getCollectionParentConfigName, cache::getCollectionItemConfigName);
+
+            long baseline = Benchmarks.nanosPerOperation("nested config name mapping (multiplexer)", () -> {
+                uncached.mapSingleton(configName, values);
+            });
+            long optimized = Benchmarks.nanosPerOperation("nested config name mapping (cache)", () -> {
+                cached.mapSingleton(configName, values);
+            });
+            Benchmarks.reportRatio("nested config name mapping", baseline, optimized);
+        });
+    }
+
+    /**
+     * Maps the nested config names in the same order as ConfigurationPersistHelper when writing a configuration.
+     */
+    private static final class NameMapping {
+
+        private final UnaryOperator<String> configName;
+        private final UnaryOperator<String> collectionParentConfigName;
+        private final UnaryOperator<String> collectionItemConfigName;
+
+        NameMapping(
+                UnaryOperator<String> configName,
+                UnaryOperator<String> collectionParentConfigName,
+                UnaryOperator<String> collectionItemConfigName) {
+            this.configName = configName;
+            this.collectionParentConfigName = collectionParentConfigName;
+            this.collectionItemConfigName = collectionItemConfigName;
+        }
+
+        void mapSingleton(String name, Map<String, Object> values) {
+            if (hasNested(values)) {
+                mapNested(configName.apply(name) + "/", values);
+            }
+        }
+
+        void mapCollection(String name, Collection<Map<String, Object>> items) {
+            String parentName = collectionParentConfigName.apply(name);
+            int index = 0;
+            for (Map<String, Object> item : items) {
+                if (hasNested(item)) {
+                    mapNested(collectionItemConfigName.apply(parentName + "/item" + index) + "/", item);
+                }
+                index++;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void mapNested(String prefix, Map<String, Object> values) {
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                if (entry.getValue() instanceof Map) {
+                    mapSingleton(prefix + entry.getKey(), (Map<String, Object>) entry.getValue());
+                } else if (entry.getValue() instanceof Collection) {
+                    mapCollection(prefix + entry.getKey(), (Collection<Map<String, Object>>) entry.getValue());
+                }
+            }
+        }
+
+        private static boolean hasNested(Map<String, Object> values) {
+            return values.values().stream().anyMatch(value -> value instanceof Map || value instanceof Collection);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import org.apache.sling.caconfig.management.multiplexer.ConfigurationPersistenceStrategyMultiplexer;
+import org.apache.sling.caconfig.spi.ConfigurationPersistenceStrategy2;
+import org.apache.sling.testing.mock.caconfig.persistence.CustomConfigurationPersistenceStrategy2;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@SuppressWarnings("null")
+public class ConfigurationNameMappingCacheTest {
+
+    @Rule
+    public SlingContext context = new SlingContextBuilder().plugin(CACONFIG).build();
+
+    @Test
+    public void testInvalidateOnStrategyRegistration() {
+        ConfigurationNameMappingCache cache = ConfigurationNameMappingCache.get(
+                context, context.getService(ConfigurationPersistenceStrategyMultiplexer.class));
+        assertSame(cache, ConfigurationNameMappingCache.get(context, null));
+
+        assertEquals("config1", cache.getConfigName("config1"));
+        assertEquals("config1", cache.getCollectionParentConfigName("config1"));
+
+        context.registerService(
+                ConfigurationPersistenceStrategy2.class,
+                new CustomConfigurationPersistenceStrategy2(),
+                Constants.SERVICE_RANKING,
+                2000);
+
+        assertEquals("config1/jcr:content", cache.getConfigName("config1"));
+        assertEquals("config1/jcr:content", cache.getCollectionParentConfigName("config1"));
+        assertEquals("config1", cache.getCollectionItemConfigName("config1"));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.caconfig.spi.ConfigurationPersistData;
+import org.apache.sling.caconfig.spi.ConfigurationPersistenceStrategy2;
+import org.apache.sling.testing.mock.caconfig.persistence.CustomConfigurationPersistenceStrategy;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+@SuppressWarnings("null")
+public class ConfigurationPersistHelperTest {
+
+    private static final int DEPTH = 20;
+
+    @Rule
+    public SlingContext context = new SlingContextBuilder().plugin(CACONFIG).build();
+
+    private final List<Integer> stackDepths = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        context.registerService(
+                ConfigurationPersistenceStrategy2.class,
+                new CustomConfigurationPersistenceStrategy() {
+                    @Override
+                    public boolean persistConfiguration(
+                            @NotNull ResourceResolver resourceResolver,
+                            @NotNull String configResourcePath,
+                            @NotNull ConfigurationPersistData data) {
+                        stackDepths.add(Thread.currentThread().getStackTrace().length);
+                        return super.persistConfiguration(resourceResolver, configResourcePath, data);
+                    }
+                },
+                Constants.SERVICE_RANKING,
+                3000);
+        context.create().resource("/content/site1", "sling:configRef", "/conf/site1");
+    }
+
+    @Test
+    public void testDeepNestingWithConstantStackDepth() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("level", DEPTH);
+        for (int i = DEPTH - 1; i >= 0; i--) {
+            Map<String, Object> parent = new HashMap<>();
+            parent.put("level", i);
+            parent.put("sub", values);
+            values = parent;
+        }
+
+        new ConfigurationPersistHelper(context, "/content/site1").writeConfiguration("deepConfig", values);
+
+        assertEquals(DEPTH + 1, stackDepths.size());
+        assertEquals(1, stackDepths.stream().distinct().count());
+
+        StringBuilder path = new StringBuilder("/conf/site1/sling:configs/deepConfig/jcr:content");
+        for (int i = 1; i <= DEPTH; i++) {
+            path.append("/sub/jcr:content");
+        }
+        assertNotNull(context.resourceResolver().getResource(path.toString()));
+        assertEquals(
+                DEPTH,
+                context.resourceResolver()
+                        .getResource(path.toString())
+                        .getValueMap()
+                        .get("level", Integer.class)
+                        .intValue());
+    }
+}
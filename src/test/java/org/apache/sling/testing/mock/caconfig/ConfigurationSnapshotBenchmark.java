@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.Map;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.testing.mock.caconfig.example.NestedConfig;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.junit.Test;
+
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
+
+/**
+ * Compares restoring the configuration resources below <code>/conf</code> from a {@link ConfigurationSnapshot} with
+ * rebuilding the same fixture by writing the nested configurations through the persistence strategies.
+ */
+public class ConfigurationSnapshotBenchmark {
+
+    private static final int CONTEXT_PATHS = 5;
+    private static final int ITEMS = 5;
+
+    @Test
+    public void testRestoreFixture() throws Throwable {
+        Map<String, Object> values = Benchmarks.nestedConfigValues(ITEMS);
+        Benchmarks.runInContext(new SlingContextBuilder().plugin(CACONFIG).build(), context -> {
+            MockContextAwareConfig.registerAnnotationClasses(context, NestedConfig.class);
+            for (int i = 0; i < CONTEXT_PATHS; i++) {
+                context.create().resource("/content/site" + i, "sling:configRef", "/conf/site" + i);
+            }
+            context.resourceResolver().commit();
+            ResourceResolver resourceResolver = context.resourceResolver();
+
+            long baseline = Benchmarks.nanosPerOperation("rebuild fixture (write configurations)", () -> {
+                Resource conf = resourceResolver.getResource("/conf");
+                if (conf != null) {
+                    resourceResolver.delete(conf);
+                    resourceResolver.commit();
+                }
+                for (int i = 0; i < CONTEXT_PATHS; i++) {
+                    MockContextAwareConfig.writeConfiguration(context, "/content/site" + i, NestedConfig.class, values);
+                }
+            });
+            byte[] snapshot = ConfigurationSnapshot.export(resourceResolver, "/conf");
+            long optimized = Benchmarks.nanosPerOperation("restore fixture (snapshot)", () -> {
+                ConfigurationSnapshot.restore(resourceResolver, snapshot);
+            });
+            Benchmarks.reportRatio("restore fixture", baseline, optimized);
+        });
+    }
+}
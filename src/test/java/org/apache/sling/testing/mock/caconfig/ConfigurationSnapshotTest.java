@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.stream.Collectors;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.caconfig.ConfigurationBuilder;
+import org.apache.sling.testing.mock.caconfig.example.ListConfig;
+import org.apache.sling.testing.mock.caconfig.example.NestedConfig;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+@SuppressWarnings("null")
+public class ConfigurationSnapshotTest {
+
+    @Rule
+    public SlingContext context = new SlingContextBuilder().plugin(CACONFIG).build();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        MockContextAwareConfig.registerAnnotationPackages(context, "org.apache.sling.testing.mock.caconfig.example");
+        context.create().resource("/content/site1", "sling:configRef", "/conf/site1");
+        file = folder.newFile("snapshot.bin").toPath();
+    }
+
+    @Test
+    public void testExportAndRestoreInNewContext() throws Throwable {
+        MockContextAwareConfig.writeConfiguration(
+                context,
+                "/content/site1",
+                NestedConfig.class,
+                "stringParam",
+                "value1",
+                "sub",
+                List.of(Map.of("subStringParam", "v1", "stringArrayParam", new String[] {"v1a", "v1b"})),
+                "sub2",
+                Map.of("sub2StringParam", "v2"));
+        MockContextAwareConfig.writeConfigurationCollection(
+                context,
+                "/content/site1",
+                ListConfig.class,
+                List.of(Map.of("stringParam", "item1"), Map.of("stringParam", "item2", "intParam", 6)));
+
+        MockContextAwareConfig.exportSnapshot(context, "/conf", file);
+
+        SlingContext newContext = new SlingContextBuilder().plugin(CACONFIG).build();
+        newContext
+                .apply(
+                        new Statement() {
+                            @Override
+                            public void evaluate() throws Throwable {
+                                MockContextAwareConfig.registerAnnotationPackages(
+                                        newContext, "org.apache.sling.testing.mock.caconfig.example");
+                                newContext.create().resource("/content/site1", "sling:configRef", "/conf/site1");
+                                MockContextAwareConfig.restoreSnapshot(newContext, file);
+
+                                ConfigurationBuilder builder = newContext
+                                        .resourceResolver()
+                                        .getResource("/content/site1")
+                                        .adaptTo(ConfigurationBuilder.class);
+                                NestedConfig config = builder.as(NestedConfig.class);
+                                assertEquals("value1", config.stringParam());
+                                assertEquals("v1", config.sub()[0].subStringParam());
+                                assertArrayEquals(new String[] {"v1a", "v1b"}, config.sub()[0].stringArrayParam());
+                                assertEquals("v2", config.sub2().sub2StringParam());
+                                assertEquals(
+                                        List.of("item1", "item2"),
+                                        builder.asCollection(ListConfig.class).stream()
+                                                .map(ListConfig::stringParam)
+                                                .collect(Collectors.toList()));
+                            }
+                        },
+                        Description.EMPTY)
+                .evaluate();
+    }
+
+    @Test
+    public void testPropertyTypesAndReplace() throws IOException {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("Europe/Berlin"));
+        calendar.setTimeInMillis(1234567890000L);
+        context.create()
+                .resource(
+                        "/conf/types/child",
+                        Map.of(
+                                "string",
+                                "value",
+                                "boolean",
+                                true,
+                                "int",
+                                5,
+                                "long",
+                                5L,
+                                "double",
+                                1.5d,
+                                "decimal",
+                                new BigDecimal("1.25"),
+                                "calendar",
+                                calendar,
+                                "stringArray",
+                                new String[] {"a", "b"},
+                                "intArray",
+                                new Integer[] {1, 2}));
+        context.create().resource("/conf/types/child/grandchild");
+        context.create().resource("/conf/types/child2");
+
+        MockContextAwareConfig.exportSnapshot(context, "/conf/types", file);
+
+        // modify tree, restoring replaces it
+        context.resourceResolver().delete(context.resourceResolver().getResource("/conf/types/child2"));
+        context.create().resource("/conf/types/child3");
+        MockContextAwareConfig.restoreSnapshot(context, file);
+
+        Resource types = context.resourceResolver().getResource("/conf/types");
+        assertEquals(List.of("child", "child2"), getChildNames(types));
+        assertEquals(List.of("grandchild"), getChildNames(types.getChild("child")));
+
+        ValueMap props = types.getChild("child").getValueMap();
+        assertEquals("value", props.get("string", String.class));
+        assertEquals(true, props.get("boolean", Boolean.class));
+        assertEquals(5, (int) props.get("int", Integer.class));
+        assertEquals(5L, (long) props.get("long", Long.class));
+        assertEquals(1.5d, props.get("double", Double.class), 0.0001d);
+        assertEquals(new BigDecimal("1.25"), props.get("decimal", BigDecimal.class));
+        assertEquals(
+                calendar.getTimeInMillis(),
+                props.get("calendar", Calendar.class).getTimeInMillis());
+        assertArrayEquals(new String[] {"a", "b"}, props.get("stringArray", String[].class));
+        assertArrayEquals(new Integer[] {1, 2}, props.get("intArray", Integer[].class));
+    }
+
+    @Test
+    public void testPrimitiveArrays() throws IOException {
+        context.create()
+                .resource(
+                        "/conf/types",
+                        Map.of(
+                                "intArray",
+                                new int[] {1, 2},
+                                "longArray",
+                                new long[] {3L},
+                                "booleanArray",
+                                new boolean[] {true, false},
+                                "doubleArray",
+                                new double[] {1.5d}));
+
+        ValueMap before = context.resourceResolver().getResource("/conf/types").getValueMap();
+        Map<String, Class<?>> arrayTypes = new HashMap<>();
+        before.forEach((key, value) -> arrayTypes.put(key, value.getClass()));
+
+        byte[] snapshot = ConfigurationSnapshot.export(context.resourceResolver(), "/conf/types");
+        ConfigurationSnapshot.restore(context.resourceResolver(), snapshot);
+
+        ValueMap props = context.resourceResolver().getResource("/conf/types").getValueMap();
+        arrayTypes.forEach((key, type) -> assertEquals(key, type, props.get(key).getClass()));
+        assertArrayEquals(new int[] {1, 2}, props.get("intArray", int[].class));
+        assertArrayEquals(new long[] {3L}, props.get("longArray", long[].class));
+        assertArrayEquals(new boolean[] {true, false}, props.get("booleanArray", boolean[].class));
+        assertArrayEquals(new double[] {1.5d}, props.get("doubleArray", double[].class), 0.0001d);
+    }
+
+    @Test
+    public void testJcrPropertiesSkipped() throws IOException {
+        context.create()
+                .resource(
+                        "/conf/types",
+                        Map.of("jcr:primaryType", "sling:Folder", "jcr:createdBy", "admin", "prop1", "value1"));
+
+        byte[] snapshot = ConfigurationSnapshot.export(context.resourceResolver(), "/conf/types");
+        ConfigurationSnapshot.restore(context.resourceResolver(), snapshot);
+
+        ValueMap props = context.resourceResolver().getResource("/conf/types").getValueMap();
+        assertEquals("sling:Folder", props.get("jcr:primaryType", String.class));
+        assertEquals("value1", props.get("prop1", String.class));
+        assertFalse(props.containsKey("jcr:createdBy"));
+    }
+
+    @Test
+    public void testRepositoryRoot() throws IOException {
+        context.create().resource("/conf/site1", "prop1", "value1");
+        context.resourceResolver().commit();
+
+        byte[] snapshot = ConfigurationSnapshot.export(context.resourceResolver(), "/");
+        context.resourceResolver().delete(context.resourceResolver().getResource("/conf/site1"));
+        context.create().resource("/other");
+        context.resourceResolver().commit();
+
+        assertEquals("/", ConfigurationSnapshot.restore(context.resourceResolver(), snapshot));
+        assertEquals(
+                "value1",
+                context.resourceResolver()
+                        .getResource("/conf/site1")
+                        .getValueMap()
+                        .get("prop1", String.class));
+        assertNotNull(context.resourceResolver().getResource("/content/site1"));
+        assertNull(context.resourceResolver().getResource("/other"));
+    }
+
+    @Test
+    public void testInvalidFile() throws IOException {
+        Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> MockContextAwareConfig.restoreSnapshot(context, file));
+    }
+
+    private static List<String> getChildNames(Resource resource) {
+        List<String> names = new ArrayList<>();
+        resource.listChildren().forEachRemaining(child -> names.add(child.getName()));
+        return names;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.caconfig.ConfigurationBuilder;
+import org.apache.sling.caconfig.spi.ConfigurationCollectionPersistData;
+import org.apache.sling.caconfig.spi.ConfigurationPersistData;
+import org.apache.sling.caconfig.spi.ConfigurationPersistenceStrategy2;
+import org.apache.sling.testing.mock.caconfig.example.ListConfig;
+import org.apache.sling.testing.mock.caconfig.example.NestedConfig;
+import org.apache.sling.testing.mock.caconfig.example.SimpleConfig;
+import org.apache.sling.testing.mock.caconfig.persistence.CustomConfigurationPersistenceStrategy2;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+
+@SuppressWarnings("null")
+public class ConfigurationWriterTest {
+
+    @Rule
+    public SlingContext context = new SlingContextBuilder().plugin(CACONFIG).build();
+
+    private final List<String> writes = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        context.registerService(
+                ConfigurationPersistenceStrategy2.class,
+                new CustomConfigurationPersistenceStrategy2() {
+                    @Override
+                    public boolean persistConfiguration(
+                            @NotNull ResourceResolver resourceResolver,
+                            @NotNull String configResourcePath,
+                            @NotNull ConfigurationPersistData data) {
+                        writes.add("persist:" + configResourcePath);
+                        return super.persistConfiguration(resourceResolver, configResourcePath, data);
+                    }
+
+                    @Override
+                    public boolean persistConfigurationCollection(
+                            @NotNull ResourceResolver resourceResolver,
+                            @NotNull String configResourceCollectionParentPath,
+                            @NotNull ConfigurationCollectionPersistData data) {
+                        writes.add("persistCollection:" + configResourceCollectionParentPath);
+                        return super.persistConfigurationCollection(
+                                resourceResolver, configResourceCollectionParentPath, data);
+                    }
+
+                    @Override
+                    public boolean deleteConfiguration(
+                            @NotNull ResourceResolver resourceResolver, @NotNull String configResourcePath) {
+                        writes.add("delete:" + configResourcePath);
+                        return super.deleteConfiguration(resourceResolver, configResourcePath);
+                    }
+                },
+                Constants.SERVICE_RANKING,
+                2000);
+        MockContextAwareConfig.registerAnnotationPackages(context, "org.apache.sling.testing.mock.caconfig.example");
+        context.create().resource("/content/site1", "sling:configRef", "/conf/site1");
+        context.create().resource("/content/site2", "sling:configRef", "/conf/site2");
+        context.resourceResolver().commit();
+    }
+
+    @Test
+    public void testWriteWithReusedWriter() {
+        ConfigurationWriter writer = MockContextAwareConfig.writer(context);
+        for (int i = 0; i < 5; i++) {
+            writer.writeConfiguration("/content/site1", SimpleConfig.class, "stringParam", "value" + i)
+                    .writeConfigurationCollection(
+                            "/content/site2", ListConfig.class, List.of(Map.of("stringParam", "item" + i)));
+        }
+        assertFalse(context.resourceResolver().hasChanges());
+
+        assertEquals(
+                "value4", getBuilder("/content/site1").as(SimpleConfig.class).stringParam());
+        assertEquals(
+                "item4",
+                getBuilder("/content/site2")
+                        .asCollection(ListConfig.class)
+                        .iterator()
+                        .next()
+                        .stringParam());
+    }
+
+    @Test
+    public void testIncrementalWriteOnlyChanged() {
+        MockContextAwareConfig.writer(context)
+                .writeConfiguration(
+                        "/content/site1",
+                        NestedConfig.class,
+                        Map.of("stringParam", "value1", "sub2", Map.of("sub2StringParam", "v1")))
+                .writeConfigurationCollection(
+                        "/content/site1",
+                        ListConfig.class,
+                        List.of(
+                                Map.of("stringParam", "item0"),
+                                Map.of("stringParam", "item1"),
+                                Map.of("stringParam", "item2")));
+        writes.clear();
+
+        MockContextAwareConfig.incrementalWriter(context)
+                .writeConfiguration(
+                        "/content/site1",
+                        NestedConfig.class,
+                        Map.of("stringParam", "value1", "sub2", Map.of("sub2StringParam", "v2")))
+                .writeConfigurationCollection(
+                        "/content/site1",
+                        ListConfig.class,
+                        List.of(Map.of("stringParam", "item0"), Map.of("stringParam", "item1a")));
+
+        String configs = "/conf/site1/sling:configs/";
+        assertEquals(
+                List.of(
+                        "persist:" + configs + NestedConfig.class.getName() + "/jcr:content/sub2",
+                        "persist:" + configs + ListConfig.class.getName() + "/jcr:content/item1",
+                        "delete:" + configs + ListConfig.class.getName() + "/jcr:content/item2"),
+                writes);
+
+        assertEquals(
+                "v2", getBuilder("/content/site1").as(NestedConfig.class).sub2().sub2StringParam());
+        assertEquals(
+                List.of("item0", "item1a"),
+                getBuilder("/content/site1").asCollection(ListConfig.class).stream()
+                        .map(ListConfig::stringParam)
+                        .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testIncrementalWriteTypeChanged() {
+        MockContextAwareConfig.writer(context)
+                .writeConfiguration("/content/site1", SimpleConfig.class, "stringParam", "value1", "intParam", "6");
+        writes.clear();
+
+        ConfigurationWriter writer = MockContextAwareConfig.incrementalWriter(context);
+        writer.writeConfiguration("/content/site1", SimpleConfig.class, "stringParam", "value1", "intParam", 6);
+        writer.writeConfiguration(
+                "/content/site1", SimpleConfig.class, "stringParam", new String[] {"value1"}, "intParam", 6);
+        writer.writeConfiguration(
+                "/content/site1", SimpleConfig.class, "stringParam", new String[] {"value1"}, "intParam", 6);
+
+        String config = "persist:/conf/site1/sling:configs/testConfig";
+        assertEquals(List.of(config, config), writes);
+        assertEquals(
+                6,
+                context.resourceResolver()
+                        .getResource("/conf/site1/sling:configs/testConfig/jcr:content")
+                        .getValueMap()
+                        .get("intParam"));
+    }
+
+    @Test
+    public void testCollectionItemOperationsWriteOnlyTouchedItems() {
+        MockContextAwareConfig.writeConfigurationCollection(
+                context,
+                "/content/site1",
+                ListConfig.class,
+                IntStream.range(0, 100).mapToObj(i -> Map.<String, Object>of("stringParam", "item" + i)));
+        writes.clear();
+
+        MockContextAwareConfig.appendConfigurationCollectionItems(
+                context, "/content/site1", ListConfig.class, List.of(Map.of("stringParam", "item100")));
+        MockContextAwareConfig.updateConfigurationCollectionItem(
+                context, "/content/site1", ListConfig.class, "item50", Map.of("stringParam", "item50a"));
+        MockContextAwareConfig.removeConfigurationCollectionItems(
+                context, "/content/site1", ListConfig.class, "item10", "item20");
+
+        String items = "/conf/site1/sling:configs/" + ListConfig.class.getName() + "/jcr:content/";
+        assertEquals(
+                List.of(
+                        "persist:" + items + "item100",
+                        "persist:" + items + "item50",
+                        "delete:" + items + "item10",
+                        "delete:" + items + "item20"),
+                writes);
+        assertEquals(
+                99, getBuilder("/content/site1").asCollection(ListConfig.class).size());
+    }
+
+    @Test
+    public void testCollectionItemOperationsWithWriter() {
+        ConfigurationWriter writer = MockContextAwareConfig.writer(context)
+                .writeConfigurationCollection(
+                        "/content/site1",
+                        ListConfig.class,
+                        List.of(Map.of("stringParam", "item0"), Map.of("stringParam", "item1")));
+        writes.clear();
+
+        writer.appendConfigurationCollectionItems(
+                        "/content/site1", ListConfig.class, List.of(Map.of("stringParam", "item2")))
+                .updateConfigurationCollectionItem("/content/site1", ListConfig.class, 0, Map.of("stringParam", "a"))
+                .removeConfigurationCollectionItems("/content/site1", ListConfig.class, "item1");
+
+        String items = "/conf/site1/sling:configs/" + ListConfig.class.getName() + "/jcr:content/";
+        assertEquals(
+                List.of("persist:" + items + "item2", "persist:" + items + "item0", "delete:" + items + "item1"),
+                writes);
+        assertEquals(
+                List.of("a", "item2"),
+                getBuilder("/content/site1").asCollection(ListConfig.class).stream()
+                        .map(ListConfig::stringParam)
+                        .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testInvalidateContextResource() throws Exception {
+        ConfigurationWriter writer = MockContextAwareConfig.writer(context)
+                .writeConfiguration("/content/site1", SimpleConfig.class, "stringParam", "value1");
+
+        // replace context resource after first write
+        context.resourceResolver().delete(context.resourceResolver().getResource("/content/site1"));
+        context.create().resource("/content/site1", "sling:configRef", "/conf/site1b");
+        context.resourceResolver().commit();
+        writes.clear();
+
+        writer.invalidate("/content/site1")
+                .writeConfiguration("/content/site1", SimpleConfig.class, "stringParam", "value2");
+        assertEquals(List.of("persist:/conf/site1b/sling:configs/testConfig"), writes);
+        assertEquals(
+                "value2", getBuilder("/content/site1").as(SimpleConfig.class).stringParam());
+    }
+
+    @Test
+    public void testInvalidContextPath() {
+        ConfigurationWriter writer = MockContextAwareConfig.writer(context);
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> writer.writeConfiguration("/content/invalid", SimpleConfig.class, "stringParam", "value1"));
+    }
+
+    private ConfigurationBuilder getBuilder(String contextPath) {
+        return context.resourceResolver().getResource(contextPath).adaptTo(ConfigurationBuilder.class);
+    }
+}
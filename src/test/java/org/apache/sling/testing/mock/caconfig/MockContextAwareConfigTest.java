@@ -18,10 +18,18 @@
  */
 package org.apache.sling.testing.mock.caconfig;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.caconfig.ConfigurationBuilder;
@@ -43,11 +51,17 @@ import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 public class MockContextAwareConfigTest {
 
     @Rule
-    public SlingContext context = new SlingContextBuilder().plugin(CACONFIG).build();
+    public SlingContext context = newSlingContext();
+
+    protected SlingContext newSlingContext() {
+        return new SlingContextBuilder().plugin(CACONFIG).build();
+    }
 
     @Before
     public void setUp() {
@@ -117,6 +131,70 @@ public class MockContextAwareConfigTest {
         assertEquals(5, item3.intParam());
     }
 
+    @Test
+    public void testCollectionConfig_Stream() {
+        MockContextAwareConfig.writeConfigurationCollection(
+                context,
+                "/content/region/site",
+                ListConfig.class,
+                IntStream.range(0, 100).mapToObj(i -> Map.<String, Object>of("stringParam", "value" + i)));
+
+        Collection<ListConfig> config = getConfigCollection(ListConfig.class);
+        assertEquals(100, config.size());
+        Iterator<ListConfig> items = config.iterator();
+        assertEquals("value0", items.next().stringParam());
+        assertEquals("value1", items.next().stringParam());
+    }
+
+    @Test
+    public void testCollectionConfig_StreamChunks() {
+        int size = ConfigurationPersistHelper.STREAM_CHUNK_SIZE * 2 + 1;
+        AtomicBoolean closed = new AtomicBoolean();
+        MockContextAwareConfig.writeConfigurationCollection(
+                context,
+                "/content/region/site",
+                ListConfig.class,
+                IntStream.range(0, size)
+                        .mapToObj(i -> Map.<String, Object>of("stringParam", "value" + i))
+                        .onClose(() -> closed.set(true)));
+        assertTrue(closed.get());
+
+        List<ListConfig> config = new ArrayList<>(getConfigCollection(ListConfig.class));
+        assertEquals(size, config.size());
+        assertEquals("value0", config.get(0).stringParam());
+        assertEquals("value" + (size - 1), config.get(size - 1).stringParam());
+    }
+
+    @Test
+    public void testNestedCollectionConfig_Stream() {
+        MockContextAwareConfig.writeConfigurationCollection(
+                context,
+                "/content/region/site",
+                NestedListConfig.class,
+                Stream.of(
+                        Map.of(
+                                "stringParam",
+                                "value1",
+                                "sub",
+                                List.of(Map.of("subStringParam", "v1")),
+                                "sub2",
+                                Map.of("sub2StringParam", "v2")),
+                        Map.of("stringParam", "value2")));
+
+        Collection<NestedListConfig> config = getConfigCollection(NestedListConfig.class);
+        assertEquals(2, config.size());
+        Iterator<NestedListConfig> items = config.iterator();
+
+        NestedListConfig item1 = items.next();
+        assertEquals("value1", item1.stringParam());
+        assertEquals(1, item1.sub().length);
+        assertEquals("v1", item1.sub()[0].subStringParam());
+        assertEquals("v2", item1.sub2().sub2StringParam());
+
+        NestedListConfig item2 = items.next();
+        assertEquals("value2", item2.stringParam());
+    }
+
     @Test
     public void testNestedSingletonConfig() {
         MockContextAwareConfig.writeConfiguration(
@@ -218,6 +296,182 @@ public class MockContextAwareConfigTest {
         assertEquals("value2", item2.stringParam());
     }
 
+    @Test
+    public void testIncrementalWrite() {
+        MockContextAwareConfig.writeConfigurationCollection(
+                context,
+                "/content/region/site",
+                NestedListConfig.class,
+                List.of(
+                        Map.of("stringParam", "value1", "sub2", Map.of("sub2StringParam", "v1")),
+                        Map.of("stringParam", "value2", "sub2", Map.of("sub2StringParam", "v2")),
+                        Map.of("stringParam", "value3")));
+
+        MockContextAwareConfig.incrementalWriter(context)
+                .writeConfigurationCollection(
+                        "/content/region/site",
+                        NestedListConfig.class,
+                        List.of(
+                                Map.of("stringParam", "value1", "sub2", Map.of("sub2StringParam", "v1")),
+                                Map.of("stringParam", "value2a", "sub2", Map.of("sub2StringParam", "v2a"))));
+
+        Collection<NestedListConfig> config = getConfigCollection(NestedListConfig.class);
+        assertEquals(2, config.size());
+        Iterator<NestedListConfig> items = config.iterator();
+
+        NestedListConfig item1 = items.next();
+        assertEquals("value1", item1.stringParam());
+        assertEquals("v1", item1.sub2().sub2StringParam());
+
+        NestedListConfig item2 = items.next();
+        assertEquals("value2a", item2.stringParam());
+        assertEquals("v2a", item2.sub2().sub2StringParam());
+    }
+
+    @Test
+    public void testIncrementalWrite_AppendItems() {
+        MockContextAwareConfig.writeConfiguration(
+                context, "/content/region/site", SimpleConfig.class, "stringParam", "value1");
+        MockContextAwareConfig.writeConfigurationCollection(
+                context, "/content/region/site", ListConfig.class, List.of(Map.of("stringParam", "value1")));
+
+        MockContextAwareConfig.incrementalWriter(context)
+                .writeConfiguration("/content/region/site", SimpleConfig.class, "stringParam", "value2", "intParam", 6)
+                .writeConfigurationCollection(
+                        "/content/region/site",
+                        ListConfig.class,
+                        Stream.of(Map.of("stringParam", "value1"), Map.of("stringParam", "value2")));
+
+        SimpleConfig simpleConfig = getConfig(SimpleConfig.class);
+        assertEquals("value2", simpleConfig.stringParam());
+        assertEquals(6, simpleConfig.intParam());
+
+        Collection<ListConfig> config = getConfigCollection(ListConfig.class);
+        assertEquals(2, config.size());
+        Iterator<ListConfig> items = config.iterator();
+        assertEquals("value1", items.next().stringParam());
+        assertEquals("value2", items.next().stringParam());
+    }
+
+    @Test
+    public void testCollectionConfig_AppendUpdateRemove() {
+        MockContextAwareConfig.writeConfigurationCollection(
+                context,
+                "/content/region/site",
+                NestedListConfig.class,
+                List.of(Map.of("stringParam", "value1"), Map.of("stringParam", "value2")));
+
+        MockContextAwareConfig.appendConfigurationCollectionItems(
+                context,
+                "/content/region/site",
+                NestedListConfig.class,
+                List.of(
+                        Map.of("stringParam", "value3", "sub2", Map.of("sub2StringParam", "v3")),
+                        Map.of("stringParam", "value4")));
+        MockContextAwareConfig.updateConfigurationCollectionItem(
+                context, "/content/region/site", NestedListConfig.class, "item0", Map.of("stringParam", "value1a"));
+        MockContextAwareConfig.updateConfigurationCollectionItem(
+                context, "/content/region/site", NestedListConfig.class, 3, Map.of("stringParam", "value4a"));
+        MockContextAwareConfig.removeConfigurationCollectionItems(
+                context, "/content/region/site", NestedListConfig.class, "item1");
+        MockContextAwareConfig.appendConfigurationCollectionItems(
+                context, "/content/region/site", NestedListConfig.class, List.of(Map.of("stringParam", "value5")));
+
+        Collection<NestedListConfig> config = getConfigCollection(NestedListConfig.class);
+        assertEquals(
+                List.of("value1a", "value3", "value4a", "value5"),
+                config.stream().map(NestedListConfig::stringParam).collect(Collectors.toList()));
+        assertEquals("v3", config.stream().skip(1).findFirst().get().sub2().sub2StringParam());
+    }
+
+    @Test
+    public void testCollectionConfig_UpdateMissingItem() {
+        MockContextAwareConfig.writeConfigurationCollection(
+                context, "/content/region/site", ListConfig.class, List.of(Map.of("stringParam", "value1")));
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> MockContextAwareConfig.updateConfigurationCollectionItem(
+                        context, "/content/region/site", ListConfig.class, "item5", Map.of("stringParam", "v")));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> MockContextAwareConfig.updateConfigurationCollectionItem(
+                        context, "/content/region/site", ListConfig.class, 1, Map.of("stringParam", "v")));
+    }
+
+    @Test
+    public void testLoadConfigurations_Json() {
+        MockContextAwareConfig.writeConfigurationCollection(
+                context,
+                "/content/region/site",
+                ListConfig.class,
+                List.of(Map.of("stringParam", "old1"), Map.of("stringParam", "old2"), Map.of("stringParam", "old3")));
+
+        MockContextAwareConfig.loadConfigurations(
+                context, "/content/region/site", getClass().getResourceAsStream("/configuration-fixture.json"));
+
+        NestedConfig config = getConfig(NestedConfig.class);
+        assertEquals("value1", config.stringParam());
+
+        NestedConfigSub[] sub = config.sub();
+        assertEquals(2, sub.length);
+        assertEquals("v1", sub[0].subStringParam());
+        assertEquals(5, sub[0].intParam());
+        assertArrayEquals(new String[] {"v1a", "v1b"}, sub[0].stringArrayParam());
+        assertEquals("v2", sub[1].subStringParam());
+
+        NestedConfigSub2 sub2 = config.sub2();
+        assertEquals("v3", sub2.sub2StringParam());
+        assertEquals("v4", sub2.sub().subStringParam());
+        assertEquals(2, sub2.subList().length);
+        assertEquals("v5b", sub2.subList()[1].subStringParam());
+        assertEquals("v6", config.sub2List()[0].sub2StringParam());
+
+        Collection<ListConfig> listConfig = getConfigCollection(ListConfig.class);
+        assertEquals(2, listConfig.size());
+        Iterator<ListConfig> items = listConfig.iterator();
+        assertEquals("value1", items.next().stringParam());
+        ListConfig item2 = items.next();
+        assertEquals("value2", item2.stringParam());
+        assertEquals(6, item2.intParam());
+    }
+
+    @Test
+    public void testLoadConfigurationCollection_Json() {
+        MockContextAwareConfig.loadConfiguration(
+                context,
+                "/content/region/site",
+                NestedListConfig.class,
+                toStream("[{\"stringParam\": \"value1\", \"sub\": [{\"subStringParam\": \"v1\"}], "
+                        + "\"sub2\": {\"sub2StringParam\": \"v2\"}}, {\"stringParam\": \"value2\", \"sub\": []}]"));
+
+        Collection<NestedListConfig> config = getConfigCollection(NestedListConfig.class);
+        assertEquals(2, config.size());
+        Iterator<NestedListConfig> items = config.iterator();
+
+        NestedListConfig item1 = items.next();
+        assertEquals("value1", item1.stringParam());
+        assertEquals(1, item1.sub().length);
+        assertEquals("v1", item1.sub()[0].subStringParam());
+        assertEquals("v2", item1.sub2().sub2StringParam());
+
+        NestedListConfig item2 = items.next();
+        assertEquals("value2", item2.stringParam());
+        assertEquals(0, item2.sub().length);
+    }
+
+    @Test
+    public void testLoadConfiguration_InvalidJson() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> MockContextAwareConfig.loadConfigurations(
+                        context, "/content/region/site", toStream("{\"stringParam\": \"value1\"}")));
+    }
+
+    private static InputStream toStream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
     @SuppressWarnings("null")
     private <T> @NotNull T getConfig(@NotNull Class<T> configClass) {
         Resource resource = context.request().getResource();
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.caconfig.ConfigurationBuilder;
+import org.apache.sling.caconfig.resource.spi.ContextPathStrategy;
+import org.apache.sling.testing.mock.caconfig.example.SimpleConfig;
+import org.apache.sling.testing.mock.osgi.context.ContextCallback;
+import org.apache.sling.testing.mock.sling.context.SlingContextImpl;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG_CONTEXT_PATH_INDEX;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class MockContextAwareConfig_ContextPathIndexTest extends MockContextAwareConfigTest {
+
+    @Override
+    protected SlingContext newSlingContext() {
+        return new SlingContextBuilder()
+                .plugin(CACONFIG)
+                .plugin(CACONFIG_CONTEXT_PATH_INDEX)
+                .build();
+    }
+
+    @Test
+    public void testOnlyIndexRegistered() {
+        ContextPathStrategy[] strategies = context.getServices(ContextPathStrategy.class, null);
+        for (ContextPathStrategy strategy : strategies) {
+            assertEquals(
+                    strategy instanceof ContextPathIndex,
+                    strategy.findContextResources(context.currentResource()).hasNext());
+        }
+    }
+
+    @Test
+    public void testNewContentAndChangedRoots() {
+        MockContextAwareConfig.writeConfiguration(
+                context, "/content/region/site", SimpleConfig.class, "stringParam", "value1");
+        assertEquals("value1", getConfig(SimpleConfig.class).stringParam());
+
+        // new content below an already visited context root
+        context.create().resource("/content/region/site/de", "sling:configRef", "/conf/region/site/de");
+        context.currentResource(context.create().resource("/content/region/site/de/page"));
+        MockContextAwareConfig.writeConfiguration(
+                context, "/content/region/site/de", SimpleConfig.class, "stringParam", "value2");
+        assertEquals("value2", getConfig(SimpleConfig.class).stringParam());
+
+        // changed configRef of a known context root
+        context.resourceResolver()
+                .getResource("/content/region/site/de")
+                .adaptTo(ModifiableValueMap.class)
+                .remove("sling:configRef");
+        assertEquals("value1", getConfig(SimpleConfig.class).stringParam());
+    }
+
+    @Test
+    public void testRefresh() {
+        context.currentResource(context.create().resource("/content/region/site/fr/page"));
+        assertFalse(hasContextRoot("/content/region/site/fr"));
+
+        context.resourceResolver()
+                .getResource("/content/region/site/fr")
+                .adaptTo(ModifiableValueMap.class)
+                .put("sling:configRef", "/conf/region/site/fr");
+        assertFalse(hasContextRoot("/content/region/site/fr"));
+
+        MockContextAwareConfig.refreshContextPathIndex(context, "/content/region/site/fr");
+        assertTrue(hasContextRoot("/content/region/site/fr"));
+    }
+
+    @Test
+    public void testPrefixSearchSkipsSiblings() {
+        ContextPathIndex index = context.getService(ContextPathIndex.class);
+        context.create().resource("/content/a", "sling:configRef", "/conf/a");
+        context.create().resource("/content/a-b", "sling:configRef", "/conf/a-b");
+        context.create().resource("/content/a.b/c", "sling:configRef", "/conf/a.b/c");
+        index.findContextResources(context.resourceResolver().getResource("/content/a-b"));
+        index.findContextResources(context.resourceResolver().getResource("/content/a.b/c"));
+
+        assertEquals(List.of("/content/a"), getContextPaths(context.create().resource("/content/a/b/c")));
+        assertEquals(List.of("/content/a.b/c"), getContextPaths(context.create().resource("/content/a.b/c/d")));
+    }
+
+    @Test
+    public void testRefreshOnResourceChange() {
+        context.currentResource(context.create().resource("/content/region/site/it/page"));
+        assertFalse(hasContextRoot("/content/region/site/it"));
+
+        context.resourceResolver()
+                .getResource("/content/region/site/it")
+                .adaptTo(ModifiableValueMap.class)
+                .put("sling:configRef", "/conf/region/site/it");
+        context.getService(ContextPathIndex.class)
+                .onChange(List.of(new ResourceChange(ChangeType.CHANGED, "/content/region/site/it", false)));
+        assertTrue(hasContextRoot("/content/region/site/it"));
+    }
+
+    @Test
+    public void testUnsupportedDefaultStrategySettings() {
+        ContextCallback<SlingContextImpl> configureDefaultStrategy = slingContext -> {
+            Hashtable<String, Object> properties = new Hashtable<>();
+            properties.put("configRefResourceNames", new String[] {"jcr:content"});
+            slingContext
+                    .getService(ConfigurationAdmin.class)
+                    .getConfiguration(ContextPathIndex.DEFAULT_STRATEGY_PID)
+                    .update(properties);
+        };
+        SlingContext otherContext = new SlingContextBuilder()
+                .beforeSetUp(configureDefaultStrategy)
+                .plugin(CACONFIG)
+                .plugin(CACONFIG_CONTEXT_PATH_INDEX)
+                .build();
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> otherContext
+                .apply(
+                        new Statement() {
+                            @Override
+                            public void evaluate() {
+                                // not reached
+                            }
+                        },
+                        Description.EMPTY)
+                .evaluate());
+        assertTrue(ex.getMessage(), StringUtils.contains(ex.getMessage(), "configRefResourceNames"));
+    }
+
+    private List<String> getContextPaths(Resource resource) {
+        List<String> paths = new ArrayList<>();
+        context.getService(ContextPathIndex.class)
+                .findContextResources(resource)
+                .forEachRemaining(contextResource ->
+                        paths.add(contextResource.getResource().getPath()));
+        return paths;
+    }
+
+    private <T> T getConfig(Class<T> configClass) {
+        return context.currentResource().adaptTo(ConfigurationBuilder.class).as(configClass);
+    }
+
+    private boolean hasContextRoot(String path) {
+        ContextPathStrategy index = context.getService(ContextPathIndex.class);
+        return index.findContextResources(context.currentResource())
+                .next()
+                .getResource()
+                .getPath()
+                .equals(path);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.caconfig.ConfigurationBuilder;
+import org.apache.sling.testing.mock.caconfig.example.ListConfig;
+import org.apache.sling.testing.mock.caconfig.example.SimpleConfig;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.junit.Test;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG_INMEMORY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MockContextAwareConfig_InMemoryTest extends MockContextAwareConfigTest {
+
+    @Override
+    protected SlingContext newSlingContext() {
+        return new SlingContextBuilder()
+                .plugin(CACONFIG)
+                .plugin(CACONFIG_INMEMORY)
+                .build();
+    }
+
+    @Test
+    @SuppressWarnings("null")
+    public void testNoConfigurationResources() {
+        MockContextAwareConfig.writeConfiguration(
+                context, "/content/region/site", SimpleConfig.class, "stringParam", "value1");
+        MockContextAwareConfig.writeConfigurationCollection(
+                context, "/content/region/site", ListConfig.class, List.of(Map.of("stringParam", "item1")));
+
+        assertNull(context.resourceResolver().getResource("/conf"));
+        ConfigurationBuilder builder = context.currentResource().adaptTo(ConfigurationBuilder.class);
+        assertEquals("value1", builder.as(SimpleConfig.class).stringParam());
+        assertEquals(1, builder.asCollection(ListConfig.class).size());
+    }
+
+    @Test
+    @SuppressWarnings("null")
+    public void testCollectionInheritance() {
+        context.create().resource("/content/other", "sling:configRef", "/conf/other");
+        context.create().resource("/content/other/site", "sling:configRef", "/conf/other/site");
+        context.currentResource(context.create().resource("/content/other/site/en"));
+        MockContextAwareConfig.writeConfigurationCollection(
+                context,
+                "/content/other",
+                ListConfig.class,
+                List.of(Map.of("stringParam", "parent1"), Map.of("stringParam", "parent2")));
+        MockContextAwareConfig.writeConfigurationCollection(
+                context, "/content/other/site", ListConfig.class, List.of(Map.of("stringParam", "child1")));
+        ConfigurationBuilder builder = context.currentResource().adaptTo(ConfigurationBuilder.class);
+        assertEquals(1, builder.asCollection(ListConfig.class).size());
+
+        InMemoryConfigurationStore store = context.getService(InMemoryConfigurationStore.class);
+        String parentPath = "/conf/other/site/sling:configs/" + ListConfig.class.getName();
+        store.putProperties(
+                parentPath, Map.of(InMemoryConfigurationResourceResolvingStrategy.COLLECTION_INHERIT_PROPERTY, true));
+        assertEquals(
+                List.of("child1", "parent2"),
+                builder.asCollection(ListConfig.class).stream()
+                        .map(ListConfig::stringParam)
+                        .collect(Collectors.toList()));
+    }
+
+    @Test
+    @SuppressWarnings("null")
+    public void testFallbackPathsFromDefaultStrategyConfiguration() throws IOException {
+        Hashtable<String, Object> properties = new Hashtable<>();
+        properties.put("fallbackPaths", new String[] {"/conf/myglobal"});
+        context.getService(ConfigurationAdmin.class)
+                .getConfiguration(InMemoryConfigurationResourceResolvingStrategy.DEFAULT_STRATEGY_PID)
+                .update(properties);
+
+        InMemoryConfigurationStore store = context.getService(InMemoryConfigurationStore.class);
+        store.putProperties("/conf/global/sling:configs/testConfig", Map.of("stringParam", "global"));
+        store.putProperties("/conf/myglobal/sling:configs/testConfig", Map.of("stringParam", "myglobal"));
+
+        ConfigurationBuilder builder = context.currentResource().adaptTo(ConfigurationBuilder.class);
+        assertEquals("myglobal", builder.as(SimpleConfig.class).stringParam());
+    }
+
+    @Test
+    @SuppressWarnings("null")
+    public void testOnlyStoreResourcesMapped() {
+        InMemoryConfigurationStore store = context.getService(InMemoryConfigurationStore.class);
+        InMemoryConfigurationPersistenceStrategy strategy = new InMemoryConfigurationPersistenceStrategy(store);
+
+        Resource treeResource = context.create().resource("/conf/tree/sling:configs/testConfig");
+        assertNull(strategy.getResource(treeResource));
+        assertNull(strategy.getCollectionParentResource(treeResource));
+        assertNull(strategy.getCollectionItemResource(treeResource));
+        assertNull(strategy.getResourcePath(treeResource.getPath()));
+
+        store.putProperties("/conf/memory/sling:configs/testConfig", Map.of("stringParam", "value1"));
+        Resource storeResource = InMemoryConfigurationResource.get(
+                store, context.resourceResolver(), "/conf/memory/sling:configs/testConfig");
+        assertSame(storeResource, strategy.getResource(storeResource));
+        assertEquals(storeResource.getPath(), strategy.getResourcePath(storeResource.getPath()));
+
+        // paths not existing in the store are left to the other strategies
+        assertNull(strategy.getResourcePath("/conf/new/sling:configs/testConfig"));
+    }
+}
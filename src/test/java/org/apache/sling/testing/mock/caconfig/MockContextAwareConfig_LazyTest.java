@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import org.apache.sling.api.adapter.AdapterFactory;
+import org.apache.sling.caconfig.ConfigurationBuilder;
+import org.apache.sling.caconfig.management.ConfigurationManager;
+import org.apache.sling.caconfig.management.multiplexer.ConfigurationPersistenceStrategyMultiplexer;
+import org.apache.sling.testing.mock.caconfig.example.SimpleConfig;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.junit.Test;
+
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG_LAZY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MockContextAwareConfig_LazyTest extends MockContextAwareConfigTest {
+
+    @Override
+    protected SlingContext newSlingContext() {
+        return new SlingContextBuilder().plugin(CACONFIG_LAZY).build();
+    }
+
+    @Test
+    public void testNotActivatedWithoutConfigurationAccess() {
+        assertNull(context.getService(ConfigurationPersistenceStrategyMultiplexer.class));
+    }
+
+    @Test
+    @SuppressWarnings("null")
+    public void testActivatedOnConfigurationBuilderAdaption() {
+        SimpleConfig config =
+                context.currentResource().adaptTo(ConfigurationBuilder.class).as(SimpleConfig.class);
+        assertEquals(5, config.intParam());
+        assertNotNull(context.getService(ConfigurationPersistenceStrategyMultiplexer.class));
+    }
+
+    @Test
+    public void testActivatedOnConfigurationManagerAccess() {
+        ConfigurationManager configManager = context.getService(ConfigurationManager.class);
+        assertNotNull(configManager);
+        assertTrue(configManager.getConfigurationNames().contains("testConfig"));
+        assertNotNull(context.getService(ConfigurationPersistenceStrategyMultiplexer.class));
+    }
+
+    @Test
+    @SuppressWarnings("null")
+    public void testAdapterFactoryPlaceholderUnregisteredOnActivation() {
+        context.currentResource().adaptTo(ConfigurationBuilder.class).as(SimpleConfig.class);
+        for (AdapterFactory adapterFactory : context.getServices(AdapterFactory.class, null)) {
+            assertFalse(LazyServiceActivator.isPlaceholder(adapterFactory));
+        }
+    }
+}
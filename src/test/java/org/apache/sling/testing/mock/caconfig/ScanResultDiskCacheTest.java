@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScanResultDiskCacheTest {
+
+    private static final String CONFIG_CLASS = "org.apache.sling.testing.mock.caconfig.diskcache.DiskCacheConfig";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPersistBetweenInstances() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("cache/test.properties");
+
+        ScanResultDiskCache cache1 = new ScanResultDiskCache(file);
+        assertNull(cache1.getPackageClassNames("a.b"));
+        assertNull(cache1.getManifestClassNames());
+        cache1.putPackageClassNames("a.b", List.of("a.b.Config1", "a.b.c.Config2"));
+        cache1.putPackageClassNames("a.c", List.of());
+        cache1.putManifestClassNames(List.of("x.Config3"));
+
+        ScanResultDiskCache cache2 = new ScanResultDiskCache(file);
+        assertEquals(List.of("a.b.Config1", "a.b.c.Config2"), cache2.getPackageClassNames("a.b"));
+        assertEquals(List.of(), cache2.getPackageClassNames("a.c"));
+        assertEquals(List.of("x.Config3"), cache2.getManifestClassNames());
+    }
+
+    @Test
+    public void testClassPathFingerprint() throws Exception {
+        File dir = folder.newFolder("classes");
+        Path classFile = dir.toPath().resolve("Config.class");
+        Files.write(classFile, new byte[] {1, 2, 3});
+        Files.setLastModifiedTime(classFile, FileTime.fromMillis(1000000L));
+        File jar = folder.newFile("lib.jar");
+        List<Path> classPath = List.of(dir.toPath(), jar.toPath());
+
+        String fingerprint1 = ScanResultDiskCache.getClassPathFingerprint(classPath);
+        assertEquals(fingerprint1, ScanResultDiskCache.getClassPathFingerprint(classPath));
+
+        Files.setLastModifiedTime(classFile, FileTime.fromMillis(2000000L));
+        assertNotEquals(fingerprint1, ScanResultDiskCache.getClassPathFingerprint(classPath));
+    }
+
+    @Test
+    public void testManifestClassPathExpanded() throws Exception {
+        File dir = folder.newFolder("classes");
+        Files.write(dir.toPath().resolve("Config.class"), new byte[] {1, 2, 3});
+
+        // manifest-only JARs with different names, like the Surefire booter JAR of different forks
+        Path booterJar1 =
+                writeManifestOnlyJar("surefirebooter1.jar", dir.toURI().toURL());
+        Path booterJar2 =
+                writeManifestOnlyJar("surefirebooter2.jar", dir.toURI().toURL());
+
+        try (URLClassLoader loader1 =
+                        new URLClassLoader(new URL[] {booterJar1.toUri().toURL()}, null);
+                URLClassLoader loader2 =
+                        new URLClassLoader(new URL[] {booterJar2.toUri().toURL()}, null)) {
+            Set<Path> entries1 = ScanResultDiskCache.getClassPathEntries(loader1);
+            assertEquals(Set.of(dir.toPath().toAbsolutePath().normalize()), entries1);
+            assertEquals(
+                    ScanResultDiskCache.getClassPathFingerprint(entries1),
+                    ScanResultDiskCache.getClassPathFingerprint(ScanResultDiskCache.getClassPathEntries(loader2)));
+        }
+    }
+
+    @Test
+    public void testScanWithUrlClassLoader() throws Exception {
+        URL root = TestConfigurationClasses.compile(folder.newFolder("scan-classes"), CONFIG_CLASS);
+        String packageName = StringUtils.substringBeforeLast(CONFIG_CLASS, ".");
+        Path cacheDirectory = folder.newFolder("cache").toPath();
+
+        Thread thread = Thread.currentThread();
+        ClassLoader originalClassLoader = thread.getContextClassLoader();
+        System.setProperty(ScanResultDiskCache.ENABLED_PROPERTY, "true");
+        System.setProperty(ScanResultDiskCache.DIRECTORY_PROPERTY, cacheDirectory.toString());
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {root}, originalClassLoader)) {
+            // URLs of the scanned class loader are not part of java.class.path
+            assertTrue(ScanResultDiskCache.getClassPathEntries(loader)
+                    .contains(Path.of(root.toURI()).toAbsolutePath().normalize()));
+            assertFalse(System.getProperty("java.class.path")
+                    .contains(Path.of(root.toURI()).toString()));
+
+            thread.setContextClassLoader(loader);
+            Collection<Class> classes = ConfigurationMetadataUtil.getConfigurationClassesForPackages(packageName);
+            assertEquals(
+                    List.of(CONFIG_CLASS), classes.stream().map(Class::getName).collect(Collectors.toList()));
+
+            ScanResultDiskCache cache = ScanResultDiskCache.get(loader);
+            assertNotNull(cache);
+            assertNotSame(cache, ScanResultDiskCache.get(originalClassLoader));
+            assertEquals(List.of(CONFIG_CLASS), cache.getPackageClassNames(packageName));
+
+            // another JVM with the same class loader URLs reads the scan result from the same file
+            Path file = cacheDirectory.resolve(
+                    ScanResultDiskCache.getClassPathFingerprint(ScanResultDiskCache.getClassPathEntries(loader))
+                            + ".properties");
+            assertEquals(List.of(CONFIG_CLASS), new ScanResultDiskCache(file).getPackageClassNames(packageName));
+        } finally {
+            thread.setContextClassLoader(originalClassLoader);
+            System.clearProperty(ScanResultDiskCache.ENABLED_PROPERTY);
+            System.clearProperty(ScanResultDiskCache.DIRECTORY_PROPERTY);
+        }
+    }
+
+    private Path writeManifestOnlyJar(String fileName, URL classPathEntry) throws Exception {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPathEntry.toString());
+        Path jar = folder.getRoot().toPath().resolve(fileName);
+        try (OutputStream os = Files.newOutputStream(jar);
+                JarOutputStream jarStream = new JarOutputStream(os, manifest)) {
+            // manifest only
+        }
+        return jar;
+    }
+}
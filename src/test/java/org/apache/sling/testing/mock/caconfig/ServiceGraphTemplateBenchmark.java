@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import org.apache.sling.caconfig.ConfigurationResolver;
+import org.apache.sling.caconfig.impl.ConfigurationBuilderAdapterFactory;
+import org.apache.sling.caconfig.impl.ConfigurationResolverImpl;
+import org.apache.sling.caconfig.impl.def.DefaultConfigurationPersistenceStrategy;
+import org.apache.sling.caconfig.impl.metadata.AnnotationClassConfigurationMetadataProvider;
+import org.apache.sling.caconfig.management.impl.ConfigurationManagerImpl;
+import org.apache.sling.caconfig.management.impl.ContextPathStrategyMultiplexerImpl;
+import org.apache.sling.caconfig.resource.impl.ConfigurationResourceResolverImpl;
+import org.apache.sling.caconfig.resource.impl.def.DefaultConfigurationResourceResolvingStrategy;
+import org.apache.sling.caconfig.resource.impl.def.DefaultContextPathStrategy;
+import org.apache.sling.testing.mock.osgi.context.AbstractContextPlugin;
+import org.apache.sling.testing.mock.osgi.context.ContextPlugin;
+import org.apache.sling.testing.mock.sling.context.SlingContextImpl;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Compares the per-context setup of {@link ContextPlugins#CACONFIG} using the {@link ServiceGraphTemplate} with
+ * the previous registration, which probed the impl generation with Class.forName for every context.
+ */
+public class ServiceGraphTemplateBenchmark {
+
+    @Test
+    public void testContextSetup() throws Throwable {
+        long baseline = Benchmarks.nanosPerOperation("context setup (probe service classes per context)", () -> {
+            setUpContext(LEGACY_CACONFIG);
+        });
+        long optimized = Benchmarks.nanosPerOperation("context setup (service graph template)", () -> {
+            setUpContext(CACONFIG);
+        });
+        Benchmarks.reportRatio("context setup", baseline, optimized);
+    }
+
+    @Test
+    public void testServiceRegistration() throws Throwable {
+        long baseline = Benchmarks.nanosPerOperation("service registration (probe service classes)", () -> {
+            Benchmarks.runInContext(new SlingContextBuilder().build(), context -> {
+                registerLegacy(context);
+            });
+        });
+        long optimized = Benchmarks.nanosPerOperation("service registration (service graph template)", () -> {
+            Benchmarks.runInContext(new SlingContextBuilder().build(), context -> {
+                for (ServiceGraphTemplate.Phase phase : ServiceGraphTemplate.Phase.values()) {
+                    ServiceGraphTemplate.get().register(context, phase);
+                }
+            });
+        });
+        Benchmarks.reportRatio("service registration", baseline, optimized);
+    }
+
+    private static void setUpContext(ContextPlugin<? extends SlingContextImpl> plugin) throws Throwable {
+        Benchmarks.runInContext(new SlingContextBuilder().plugin(plugin).build(), context -> {
+            assertNotNull(context.getService(ConfigurationResolver.class));
+        });
+    }
+
+    /**
+     * Registration as done by the context plugin before the service graph template was introduced.
+     */
+    private static final ContextPlugin<SlingContextImpl> LEGACY_CACONFIG =
+            new AbstractContextPlugin<SlingContextImpl>() {
+                @Override
+                public void beforeSetUp(@NotNull SlingContextImpl context) throws Exception {
+                    registerLegacyResolvers(context);
+                }
+
+                @Override
+                public void afterSetUp(@NotNull SlingContextImpl context) throws Exception {
+                    registerLegacyDefaultImpls(context);
+                    ConfigurationMetadataUtil.addAnnotationClassesForManifestEntries(context.bundleContext());
+                }
+            };
+
+    private static void registerLegacy(SlingContextImpl context) {
+        registerLegacyResolvers(context);
+        registerLegacyDefaultImpls(context);
+    }
+
+    private static void registerLegacyResolvers(SlingContextImpl context) {
+        context.registerInjectActivateService(new ContextPathStrategyMultiplexerImpl());
+        if (!registerByClassName(
+                context,
+                "org.apache.sling.caconfig.resource.impl.ConfigurationResourceResolvingStrategyMultiplexerImpl")) {
+            registerByClassName(
+                    context,
+                    "org.apache.sling.caconfig.resource.impl.ConfigurationResourceResolvingStrategyMultiplexer");
+        }
+        context.registerInjectActivateService(new ConfigurationResourceResolverImpl());
+
+        registerByClassName(context, "org.apache.sling.caconfig.management.impl.ConfigurationManagementSettingsImpl");
+        if (!registerByClassName(
+                context, "org.apache.sling.caconfig.management.impl.ConfigurationPersistenceStrategyMultiplexerImpl")) {
+            registerByClassName(
+                    context, "org.apache.sling.caconfig.management.impl.ConfigurationPersistenceStrategyMultiplexer");
+        }
+        registerByClassName(context, "org.apache.sling.caconfig.impl.ConfigurationPersistenceStrategyBridge");
+        if (!registerByClassName(
+                context, "org.apache.sling.caconfig.impl.metadata.ConfigurationMetadataProviderMultiplexerImpl")) {
+            registerByClassName(
+                    context, "org.apache.sling.caconfig.impl.metadata.ConfigurationMetadataProviderMultiplexer");
+        }
+        if (!registerByClassName(
+                context, "org.apache.sling.caconfig.impl.ConfigurationInheritanceStrategyMultiplexerImpl")) {
+            registerByClassName(context, "org.apache.sling.caconfig.impl.ConfigurationInheritanceStrategyMultiplexer");
+        }
+        if (!registerByClassName(
+                context, "org.apache.sling.caconfig.impl.override.ConfigurationOverrideMultiplexerImpl")) {
+            registerByClassName(context, "org.apache.sling.caconfig.impl.override.ConfigurationOverrideManager");
+        }
+        context.registerInjectActivateService(new ConfigurationResolverImpl());
+        context.registerInjectActivateService(new ConfigurationBuilderAdapterFactory());
+
+        context.registerInjectActivateService(new ConfigurationManagerImpl());
+        context.registerInjectActivateService(new AnnotationClassConfigurationMetadataProvider());
+        registerByClassName(
+                context, "org.apache.sling.caconfig.impl.ConfigurationInjectResourceDetectionStrategyMultiplexerImpl");
+        registerByClassName(
+                context, "org.apache.sling.models.caconfig.impl.injectors.ContextAwareConfigurationInjector");
+    }
+
+    private static void registerLegacyDefaultImpls(SlingContextImpl context) {
+        context.registerInjectActivateService(new DefaultContextPathStrategy());
+        context.registerInjectActivateService(new DefaultConfigurationResourceResolvingStrategy());
+        context.registerInjectActivateService(new DefaultConfigurationPersistenceStrategy());
+        registerByClassName(context, "org.apache.sling.caconfig.impl.def.DefaultConfigurationInheritanceStrategy");
+        registerByClassName(
+                context, "org.apache.sling.caconfig.impl.def.DefaultConfigurationInjectResourceDetectionStrategy");
+    }
+
+    private static boolean registerByClassName(SlingContextImpl context, String className) {
+        try {
+            Class<?> clazz = Class.forName(className);
+            context.registerInjectActivateService(clazz.getDeclaredConstructor().newInstance());
+            return true;
+        } catch (ClassNotFoundException ex) {
+            return false;
+        } catch (ReflectiveOperationException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import org.apache.sling.caconfig.ConfigurationResolver;
+import org.apache.sling.caconfig.impl.ConfigurationBuilderAdapterFactory;
+import org.apache.sling.caconfig.impl.ConfigurationResolverImpl;
+import org.apache.sling.caconfig.management.impl.ConfigurationManagerImpl;
+import org.apache.sling.testing.mock.caconfig.ServiceGraphTemplate.Phase;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ServiceGraphTemplateTest {
+
+    @Rule
+    public SlingContext context = new SlingContextBuilder().plugin(CACONFIG).build();
+
+    @Test
+    public void testServiceClasses() {
+        ServiceGraphTemplate template = ServiceGraphTemplate.get();
+        assertSame(template, ServiceGraphTemplate.get());
+        assertTrue(template.getServiceClasses(Phase.RESOLVER).contains(ConfigurationResolverImpl.class));
+        assertTrue(template.getServiceClasses(Phase.RESOLVER).contains(ConfigurationBuilderAdapterFactory.class));
+        assertTrue(template.getServiceClasses(Phase.MANAGEMENT).contains(ConfigurationManagerImpl.class));
+    }
+
+    @Test
+    public void testImplGeneration() {
+        ImplGeneration generation = ContextPlugins.getImplGeneration();
+        boolean hasMultiplexerImpl = ServiceGraphTemplate.get().getServiceClasses(Phase.RESOLVER).stream()
+                .anyMatch(clazz -> clazz.getName().endsWith("ConfigurationPersistenceStrategyMultiplexerImpl"));
+        assertEquals(generation.isAtLeast(ImplGeneration.IMPL_1_3), hasMultiplexerImpl);
+    }
+
+    @Test
+    public void testFreshInstancesPerContext() throws Throwable {
+        ConfigurationResolver resolver1 = context.getService(ConfigurationResolver.class);
+        assertNotNull(resolver1);
+
+        SlingContext otherContext = new SlingContextBuilder().plugin(CACONFIG).build();
+        otherContext
+                .apply(
+                        new Statement() {
+                            @Override
+                            public void evaluate() {
+                                ConfigurationResolver resolver2 = otherContext.getService(ConfigurationResolver.class);
+                                assertNotNull(resolver2);
+                                assertNotSame(resolver1, resolver2);
+                            }
+                        },
+                        Description.EMPTY)
+                .evaluate();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.util.Map;
+
+import org.apache.sling.caconfig.impl.ConfigurationResolverImpl;
+import org.apache.sling.testing.mock.caconfig.example.SimpleConfig;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SetupTimingsTest {
+
+    @Before
+    public void setUp() {
+        SetupTimings.reset();
+        SetupTimings.enable();
+    }
+
+    @After
+    public void tearDown() {
+        SetupTimings.disable();
+        SetupTimings.reset();
+    }
+
+    @Test
+    public void testRecordSetupSteps() throws Throwable {
+        runContext();
+        runContext();
+
+        Map<String, Long> counts = SetupTimings.getCounts();
+        assertEquals((Long) 2L, counts.get("plugin:CACONFIG.beforeSetUp"));
+        assertEquals((Long) 2L, counts.get("plugin:CACONFIG.afterSetUp"));
+        assertEquals((Long) 2L, counts.get("service:" + ConfigurationResolverImpl.class.getName()));
+        assertEquals((Long) 2L, counts.get("registerAnnotationClasses"));
+        assertTrue(SetupTimings.getTotalNanos().get("plugin:CACONFIG.beforeSetUp") > 0);
+        assertTrue(SetupTimings.report().contains("plugin:CACONFIG.afterSetUp"));
+    }
+
+    @Test
+    public void testDisabled() throws Throwable {
+        SetupTimings.disable();
+        runContext();
+        assertTrue(SetupTimings.getCounts().isEmpty());
+    }
+
+    private static void runContext() throws Throwable {
+        SlingContext context = new SlingContextBuilder().plugin(CACONFIG).build();
+        context.apply(
+                        new Statement() {
+                            @Override
+                            public void evaluate() {
+                                MockContextAwareConfig.registerAnnotationClasses(context, SimpleConfig.class);
+                            }
+                        },
+                        Description.EMPTY)
+                .evaluate();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.stream.Collectors;
+
+import org.apache.sling.testing.mock.caconfig.example.ListConfig;
+import org.apache.sling.testing.mock.caconfig.example.NestedConfig;
+import org.apache.sling.testing.mock.caconfig.example.NestedConfigSub;
+import org.apache.sling.testing.mock.caconfig.example.NestedConfigSub2;
+import org.apache.sling.testing.mock.caconfig.example.NestedListConfig;
+import org.apache.sling.testing.mock.caconfig.example.SimpleConfig;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+
+import static org.apache.sling.caconfig.impl.ConfigurationNameConstants.CONFIGURATION_CLASSES_HEADER;
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
+
+/**
+ * Compares the per-context registration of configuration annotation classes with shared, pre-parsed metadata
+ * with the previous registration, which sent a bundle event to AnnotationClassConfigurationMetadataProvider
+ * that parsed the annotation classes again for each context.
+ */
+public class SharedConfigurationMetadataProviderBenchmark {
+
+    private static final Class<?>[] CLASSES = {
+        SimpleConfig.class,
+        ListConfig.class,
+        NestedConfig.class,
+        NestedConfigSub.class,
+        NestedConfigSub2.class,
+        NestedListConfig.class
+    };
+
+    @Test
+    public void testRegisterAnnotationClasses() throws Throwable {
+        String classNames = Arrays.stream(CLASSES).map(Class::getName).collect(Collectors.joining(","));
+        Benchmarks.runInContext(new SlingContextBuilder().plugin(CACONFIG).build(), context -> {
+            BundleContext bundleContext = context.bundleContext();
+            long baseline = Benchmarks.nanosPerOperation("register annotation classes (bundle event)", () -> {
+                // each test registers the classes in a new context, which parses them again
+                MockOsgi.sendBundleEvent(
+                        bundleContext,
+                        new BundleEvent(BundleEvent.STARTED, newConfigurationBundle(bundleContext, classNames)));
+            });
+            long optimized = Benchmarks.nanosPerOperation("register annotation classes (shared metadata)", () -> {
+                ConfigurationMetadataUtil.registerAnnotationClasses(bundleContext, CLASSES);
+            });
+            Benchmarks.reportRatio("register annotation classes", baseline, optimized);
+        });
+    }
+
+    /**
+     * Bundle providing the configuration classes header, as registered before the shared metadata was introduced.
+     */
+    private static Bundle newConfigurationBundle(BundleContext bundleContext, String classNames) {
+        Dictionary<String, String> headers = new Hashtable<>();
+        headers.put(CONFIGURATION_CLASSES_HEADER, classNames);
+        return (Bundle) Proxy.newProxyInstance(
+                Bundle.class.getClassLoader(), new Class<?>[] {Bundle.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getState":
+                            return Bundle.ACTIVE;
+                        case "getHeaders":
+                            return args == null ? headers : null;
+                        case "findEntries":
+                            return Collections.emptyEnumeration();
+                        case "loadClass":
+                            return SharedConfigurationMetadataProviderBenchmark.class
+                                    .getClassLoader()
+                                    .loadClass((String) args[0]);
+                        case "getBundleContext":
+                            return bundleContext;
+                        case "getBundleId":
+                        case "getLastModified":
+                            return 0L;
+                        case "compareTo":
+                            return 0;
+                        case "hasPermission":
+                            return false;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import org.apache.sling.caconfig.management.ConfigurationManager;
+import org.apache.sling.caconfig.spi.metadata.ConfigurationMetadata;
+import org.apache.sling.testing.mock.caconfig.example.SimpleConfig;
+import org.apache.sling.testing.mock.sling.junit.SlingContext;
+import org.apache.sling.testing.mock.sling.junit.SlingContextBuilder;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import static org.apache.sling.testing.mock.caconfig.ContextPlugins.CACONFIG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("null")
+public class SharedConfigurationMetadataProviderTest {
+
+    private static final String CONFIG_NAME = "testConfig";
+
+    @Test
+    public void testMetadataSharedBetweenContexts() throws Throwable {
+        ConfigurationMetadata metadata1 = getMetadataFromNewContext();
+        ConfigurationMetadata metadata2 = getMetadataFromNewContext();
+        assertEquals(CONFIG_NAME, metadata1.getName());
+        assertSame(metadata1, metadata2);
+        assertSame(metadata1, SharedConfigurationMetadataProvider.getMetadata(SimpleConfig.class));
+    }
+
+    @Test
+    public void testIgnoreClassesWithoutAnnotation() {
+        SharedConfigurationMetadataProvider provider = new SharedConfigurationMetadataProvider();
+        provider.addAnnotationClass(String.class);
+        assertTrue(provider.getConfigurationNames().isEmpty());
+    }
+
+    private static ConfigurationMetadata getMetadataFromNewContext() throws Throwable {
+        SlingContext context = new SlingContextBuilder().plugin(CACONFIG).build();
+        ConfigurationMetadata[] result = new ConfigurationMetadata[1];
+        context.apply(
+                        new Statement() {
+                            @Override
+                            public void evaluate() {
+                                MockContextAwareConfig.registerAnnotationClasses(context, SimpleConfig.class);
+                                ConfigurationManager configManager = context.getService(ConfigurationManager.class);
+                                assertTrue(configManager.getConfigurationNames().contains(CONFIG_NAME));
+                                result[0] = configManager.getConfigurationMetadata(CONFIG_NAME);
+                            }
+                        },
+                        Description.EMPTY)
+                .evaluate();
+        return result[0];
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.testing.mock.caconfig;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.lang3.StringUtils;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compiles configuration annotation classes into a separate classpath root for tests, without running the
+ * annotation processors, so the classpath root contains no configuration class index.
+ */
+final class TestConfigurationClasses {
+
+    private TestConfigurationClasses() {
+        // static methods only
+    }
+
+    /**
+     * @param directory Target directory (classpath root)
+     * @param className Fully qualified name of the configuration annotation class
+     * @return URL of the classpath root
+     * @throws IOException I/O exception
+     */
+    static URL compile(File directory, String className) throws IOException {
+        String packageName = StringUtils.substringBeforeLast(className, ".");
+        String simpleName = StringUtils.substringAfterLast(className, ".");
+        Path source = directory.toPath().resolve(simpleName + ".java");
+        Files.writeString(
+                source,
+                "package " + packageName + ";\n"
+                        + "@org.apache.sling.caconfig.annotation.Configuration\n"
+                        + "public @interface " + simpleName + " {\n"
+                        + "    String stringParam() default \"\";\n"
+                        + "}\n",
+                StandardCharsets.UTF_8);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        int result = compiler.run(
+                null,
+                null,
+                null,
+                "-proc:none",
+                "-classpath",
+                System.getProperty("java.class.path"),
+                "-d",
+                directory.getPath(),
+                source.toString());
+        assertEquals("Compilation of " + className, 0, result);
+        Files.delete(source);
+        return directory.toURI().toURL();
+    }
+}